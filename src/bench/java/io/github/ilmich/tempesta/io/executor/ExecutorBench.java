@@ -0,0 +1,66 @@
+package io.github.ilmich.tempesta.io.executor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import io.github.ilmich.tempesta.web.http.HttpServerDescriptor;
+
+/**
+ * Compares {@link BoundedExecutor} and {@link VirtualThreadExecutor} running
+ * handlers that block, e.g. on a database: measures how long a burst of tasks
+ * sleeping the given time takes to complete.
+ * <p>
+ * Build with <code>mvn -Pbench package</code> on JDK 21 and run with
+ * <code>java -cp target/tempesta-&lt;version&gt;.jar:target/test-classes
+ * io.github.ilmich.tempesta.io.executor.ExecutorBench [tasks] [sleep ms]
+ * [rounds]</code>. On older JVMs only the bounded executor is measured.
+ */
+public class ExecutorBench {
+
+	public static void main(String[] args) throws Exception {
+		int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int sleep = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		System.out.println(tasks + " tasks blocking " + sleep + " ms, "
+				+ HttpServerDescriptor.MAX_THREADS_PROCESSOR + " pool threads");
+		for (int i = 0; i < rounds; i++) {
+			run("bounded", new BoundedExecutor("bench-bounded-" + i, HttpServerDescriptor.MAX_THREADS_PROCESSOR,
+					tasks, 0, 1), tasks, sleep);
+			if (VirtualThreads.isSupported()) {
+				run("virtual", new VirtualThreadExecutor("bench-virtual-" + i, tasks, 1), tasks, sleep);
+			}
+		}
+		if (!VirtualThreads.isSupported()) {
+			System.out.println("virtual threads not supported by this JVM");
+		}
+	}
+
+	private static void run(String name, ExecutorService executor, int tasks, final int sleep)
+			throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(tasks);
+		long start = System.nanoTime();
+		for (int i = 0; i < tasks; i++) {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(sleep);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					done.countDown();
+				}
+			});
+		}
+		done.await();
+		long elapsed = System.nanoTime() - start;
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+		System.out.println(name + ": " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms, "
+				+ (tasks * 1000000000L / elapsed) + " tasks/s");
+	}
+
+}
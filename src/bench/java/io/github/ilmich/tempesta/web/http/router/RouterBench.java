@@ -0,0 +1,108 @@
+package io.github.ilmich.tempesta.web.http.router;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import io.github.ilmich.tempesta.web.http.protocol.HttpVerb;
+
+/**
+ * Compares the lookups of {@link Router} with the ones of the handler maps it
+ * replaced: exact paths in a map, then paths ending with a capturing group
+ * looked up by their prefix and matched against the group.
+ * <p>
+ * Build with <code>mvn -Pbench test-compile</code> and run with
+ * <code>java -cp target/classes:target/test-classes
+ * io.github.ilmich.tempesta.web.http.router.RouterBench [routes] [lookups]
+ * [rounds]</code>.
+ */
+public class RouterBench {
+
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		// half static routes, half ending with a capturing group
+		Router router = new Router();
+		MapRoutes maps = new MapRoutes();
+		String[] paths = new String[count];
+		for (int i = 0; i < count; i++) {
+			if (i % 2 == 0) {
+				String path = "/api/v1/resource" + i;
+				router.add(new Route(null, path, null, null));
+				maps.add(path, i);
+				paths[i] = path;
+			} else {
+				String path = "/api/v1/item" + i + "/([0-9]+)";
+				router.add(new Route(null, path, null, null));
+				maps.add(path, i);
+				paths[i] = "/api/v1/item" + i + "/" + (i * 31);
+			}
+		}
+
+		System.out.println(count + " routes, " + lookups + " lookups");
+		for (int r = 0; r < rounds; r++) {
+			long found = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) {
+				String[] values = new String[router.getMaxParameters()];
+				if (router.find(HttpVerb.GET, paths[i % count], values) != null) {
+					found++;
+				}
+			}
+			report("router", start, lookups, found);
+
+			found = 0;
+			start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) {
+				if (maps.find(paths[i % count]) != null) {
+					found++;
+				}
+			}
+			report("maps", start, lookups, found);
+		}
+	}
+
+	private static void report(String name, long start, int lookups, long found) {
+		long elapsed = System.nanoTime() - start;
+		System.out.println(name + ": " + (elapsed / lookups) + " ns/lookup (" + found + " found)");
+	}
+
+	/**
+	 * The lookup of the handler maps the router replaced
+	 */
+	private static class MapRoutes {
+
+		private final Map<String, Integer> absolute = new HashMap<String, Integer>();
+
+		private final Map<String, Integer> capturing = new HashMap<String, Integer>();
+
+		private final Map<Integer, Pattern> patterns = new HashMap<Integer, Pattern>();
+
+		void add(String path, Integer handler) {
+			int index = path.lastIndexOf("/");
+			String group = path.substring(index + 1);
+			if (group.matches("^\\(.*\\)$")) {
+				capturing.put(path.substring(0, index + 1), handler);
+				patterns.put(handler, Pattern.compile(group));
+			} else {
+				absolute.put(path, handler);
+			}
+		}
+
+		Integer find(String path) {
+			Integer handler = absolute.get(path);
+			if (handler != null) {
+				return handler;
+			}
+			int index = path.lastIndexOf("/");
+			handler = capturing.get(path.substring(0, index + 1));
+			if (handler != null && patterns.get(handler).matcher(path.substring(index + 1)).matches()) {
+				return handler;
+			}
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,32 @@
+package io.github.ilmich.tempesta.io;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A part of a response body written to the client after the headers, without
+ * being copied into the response buffer
+ */
+public interface BodySegment {
+
+	/**
+	 * Write as much as possible of the remaining bytes without blocking
+	 * 
+	 * @return the number of bytes written
+	 */
+	long writeTo(WritableByteChannel channel) throws IOException;
+
+	boolean hasRemaining();
+
+	/**
+	 * Returns the total number of bytes of the segment
+	 */
+	long length();
+
+	/**
+	 * Release the resources held by the segment, called once the response is
+	 * sent or dropped
+	 */
+	void release();
+
+}
@@ -0,0 +1,41 @@
+package io.github.ilmich.tempesta.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A body segment backed by a buffer, written from its position to its limit
+ */
+public class BufferSegment implements BodySegment {
+
+	private final ByteBuffer buffer;
+
+	private final long length;
+
+	public BufferSegment(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.length = buffer.remaining();
+	}
+
+	@Override
+	public long writeTo(WritableByteChannel channel) throws IOException {
+		return channel.write(buffer);
+	}
+
+	@Override
+	public boolean hasRemaining() {
+		return buffer.hasRemaining();
+	}
+
+	@Override
+	public long length() {
+		return length;
+	}
+
+	@Override
+	public void release() {
+		// nothing to release
+	}
+
+}
@@ -0,0 +1,19 @@
+package io.github.ilmich.tempesta.io;
+
+/**
+ * A body segment whose bytes are produced asynchronously, e.g. read from disk
+ * by another thread. Writing it returns 0 while no bytes are ready; the writer
+ * then waits for the segment instead of the socket.
+ */
+public interface DeferredSegment extends BodySegment {
+
+	/**
+	 * Register a listener called (from any thread) once bytes are ready to
+	 * write.
+	 * 
+	 * @return <code>true</code> if bytes are ready now (or the segment failed),
+	 *         in which case the listener is not registered
+	 */
+	boolean whenReady(Runnable listener);
+
+}
@@ -0,0 +1,63 @@
+package io.github.ilmich.tempesta.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import io.github.ilmich.tempesta.util.Closeables;
+
+/**
+ * A body segment sending a region of a file with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, so that the
+ * bytes are copied by the kernel where supported. Several regions may share
+ * the same channel, which is closed when any of them is released.
+ */
+public class FileRegion implements BodySegment {
+
+	private final FileChannel channel;
+
+	private final long length;
+
+	private long position;
+
+	private final long end;
+
+	/**
+	 * @param channel  the file to send
+	 * @param position the offset of the first byte to send
+	 * @param length   the number of bytes to send
+	 */
+	public FileRegion(FileChannel channel, long position, long length) {
+		this.channel = channel;
+		this.position = position;
+		this.length = length;
+		this.end = position + length;
+	}
+
+	@Override
+	public long writeTo(WritableByteChannel target) throws IOException {
+		long written = channel.transferTo(position, end - position, target);
+		if (written == 0 && position >= channel.size()) {
+			// the file was truncated, the promised bytes can't be sent
+			throw new IOException("File truncated while sending");
+		}
+		position += written;
+		return written;
+	}
+
+	@Override
+	public boolean hasRemaining() {
+		return position < end;
+	}
+
+	@Override
+	public long length() {
+		return length;
+	}
+
+	@Override
+	public void release() {
+		Closeables.closeQuietly(channel);
+	}
+
+}
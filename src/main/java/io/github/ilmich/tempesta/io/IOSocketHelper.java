@@ -35,10 +35,9 @@ public class IOSocketHelper {
 	public static int writeBuffer(ByteBuffer buffer, SocketChannel channel) throws IOException {
 		int bytesWritten = -1;
 
+		// on partial writes keep the buffer as it is, the next call resumes from
+		// the current position
 		bytesWritten = channel.write(buffer);
-		if (buffer.hasRemaining()) {
-			buffer.compact();
-		}
 
 		return bytesWritten;
 	}
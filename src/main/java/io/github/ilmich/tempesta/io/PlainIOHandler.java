@@ -3,20 +3,20 @@ package io.github.ilmich.tempesta.io;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
-import java.nio.channels.FileChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.function.BiConsumer;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.github.ilmich.tempesta.io.connectors.ServerConnector;
+import io.github.ilmich.tempesta.io.executor.BoundedExecutor;
+import io.github.ilmich.tempesta.io.executor.ConcurrencyLimiter;
+import io.github.ilmich.tempesta.io.executor.LoadSheddingExecutor;
 import io.github.ilmich.tempesta.util.ExceptionUtils;
 import io.github.ilmich.tempesta.util.Log;
+import io.github.ilmich.tempesta.web.AsyncCallback;
 import io.github.ilmich.tempesta.web.http.HttpServerDescriptor;
 import io.github.ilmich.tempesta.web.http.Request;
 import io.github.ilmich.tempesta.web.http.Response;
@@ -25,9 +25,18 @@ public class PlainIOHandler implements IOHandler {
 	
 	private static final String TAG = "PlainIOHandler";
 
-	private ExecutorService executor = new ThreadPoolExecutor(HttpServerDescriptor.MIN_THREADS_PROCESSOR,
-			HttpServerDescriptor.MAX_THREADS_PROCESSOR, HttpServerDescriptor.KEEP_ALIVE_TIMEOUT, TimeUnit.SECONDS,
-			new SynchronousQueue<Runnable>());
+	private static final AtomicInteger sequence = new AtomicInteger();
+
+	/**
+	 * Executor running blocking requests, a {@link BoundedExecutor} is created on
+	 * first use unless one is set explicitly
+	 */
+	private ExecutorService executor = null;
+
+	/**
+	 * Optional adaptive limit on the number of blocking requests in flight
+	 */
+	private ConcurrencyLimiter limiter = null;
 
 	private ServerConnector connector = null;
 
@@ -42,6 +51,13 @@ public class PlainIOHandler implements IOHandler {
 		this.protocol = protocol;
 	}
 
+	public ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = new BoundedExecutor("workers-" + sequence.incrementAndGet());
+		}
+		return executor;
+	}
+
 	public void setExecutor(ExecutorService executor) {
 		/*
 		 * if (executor instanceof ListeningExecutorService) this.executor =
@@ -51,6 +67,14 @@ public class PlainIOHandler implements IOHandler {
 		this.executor = executor;
 	}
 
+	public ConcurrencyLimiter getConcurrencyLimiter() {
+		return limiter;
+	}
+
+	public void setConcurrencyLimiter(ConcurrencyLimiter limiter) {
+		this.limiter = limiter;
+	}
+
 	@Override
 	public void handleAccept(SelectionKey key) throws IOException {
 		try {
@@ -84,45 +108,27 @@ public class PlainIOHandler implements IOHandler {
 				connector.prolongKeepAliveTimeout(client);
 			}
 
-			final Request req = protocol.onRead(readBuffer, client);
-			if (req != null) { // response completed
-				final CompletableFuture<Response> future = new CompletableFuture<Response>();
-
-				executor.submit(new Runnable() {
-
-					@Override
-					public void run() {
-						try {
-							future.complete(protocol.processRequest(req));
-						} catch (Throwable ex) {
-							future.completeExceptionally(ex);
-						}
-					}
-				});
-
-				future.whenCompleteAsync(new BiConsumer<Response, Throwable>() {
-
-					@Override
-					public void accept(Response t, Throwable u) {
-						if (t != null) {
-							try {
-								connector.registerChannel(client, SelectionKey.OP_WRITE, t);
-							} catch (IOException ex) {
-								Log.error(TAG, "Error when processing request: " + ExceptionUtils.getStackTrace(ex));
-								Log.error(TAG, req.toString());
-								connector.removeKeepAliveTimeout(client);
-								connector.closeChannel(client);
-							}
-						} else {
-							Log.error(TAG, "Error when processing request: " + ExceptionUtils.getStackTrace(u));
-							Log.error(TAG, req.toString());
-							connector.removeKeepAliveTimeout(client);
-							connector.closeChannel(client);
-						}
-
-					}
+			if (limiter != null && !protocol.hasPartialRequest(client)) {
+				limiter.onLoopLag(connector.getLoopLag());
+				if (limiter.isSaturated()) { // shed before parsing the request
+					shedRequest(client);
+					return;
+				}
+			}
 
-				});
+			final Request req = protocol.onRead(readBuffer, client);
+			if (req != null) { // request completed
+				Response cached = protocol.getCachedResponse(req);
+				if (cached != null) {
+					key.attach(cached);
+					key.interestOps(SelectionKey.OP_WRITE);
+					handleWrite(key);
+				} else if (protocol.awaitResponse(req, new PendingRequest(key))) {
+					// answered once the identical request being processed completes
+					key.interestOps(0);
+				} else {
+					dispatch(key, req);
+				}
 			}
 
 		} catch (ClosedChannelException ex) {
@@ -136,50 +142,243 @@ public class PlainIOHandler implements IOHandler {
 		}
 	}
 
+	/**
+	 * Process the given request, on the connector thread if it cannot block or
+	 * on a worker thread
+	 */
+	private void dispatch(SelectionKey key, Request req) throws IOException {
+		if (!protocol.isBlocking(req)) {
+			processInline(key, req);
+			return;
+		}
+		// the worker owns the channel until the response is handed back
+		key.interestOps(0);
+		ExecutorService workers = protocol.getExecutor(req);
+		if (workers == null) {
+			workers = getExecutor();
+		}
+		if (limiter != null && !limiter.tryAcquire()) {
+			Log.debug(TAG, "Concurrency limit reached, rejecting request");
+			processRejected(key, req, workers);
+			return;
+		}
+		try {
+			workers.execute(new RequestTask(key, req, workers));
+		} catch (RejectedExecutionException ex) {
+			Log.debug(TAG, "Worker executor saturated, rejecting request");
+			if (limiter != null) {
+				limiter.release(-1);
+			}
+			processRejected(key, req, workers);
+		}
+	}
+
+	/**
+	 * Answer with the canned "too busy" response and close the connection, the
+	 * request has not been parsed so the connection cannot be reused
+	 */
+	private void shedRequest(SocketChannel client) {
+		try {
+			client.write(protocol.getOverloadResponse());
+		} catch (IOException ex) {
+			Log.trace(TAG, "IOException when shedding request: " + ex.getMessage());
+		}
+		connector.removeKeepAliveTimeout(client);
+		connector.closeChannel(client);
+	}
+
+	/**
+	 * Answer with a "too busy" response from the connector thread
+	 */
+	private void processRejected(SelectionKey key, Request req, ExecutorService workers) throws IOException {
+		key.attach(protocol.rejectRequest(req, getRetryAfter(workers)));
+		key.interestOps(SelectionKey.OP_WRITE);
+		handleWrite(key);
+	}
+
+	private static int getRetryAfter(ExecutorService workers) {
+		if (workers instanceof LoadSheddingExecutor) {
+			return ((LoadSheddingExecutor) workers).getRetryAfter();
+		}
+		return HttpServerDescriptor.RETRY_AFTER;
+	}
+
+	/**
+	 * Process a non-blocking request directly on the connector thread and try to
+	 * write the response in the same loop iteration.
+	 */
+	private void processInline(SelectionKey key, Request req) throws IOException {
+		final SocketChannel client = (SocketChannel) key.channel();
+		Response response = null;
+		try {
+			response = protocol.processRequest(req);
+		} catch (RuntimeException ex) {
+			Log.error(TAG, "Error when processing request: " + ExceptionUtils.getStackTrace(ex));
+			Log.error(TAG, req.toString());
+			connector.removeKeepAliveTimeout(client);
+			connector.closeChannel(client);
+			return;
+		}
+		key.attach(response);
+		key.interestOps(SelectionKey.OP_WRITE);
+		handleWrite(key);
+	}
+
+	/**
+	 * Called by the worker thread once the response is ready. The response is
+	 * written immediately since the socket send buffer is almost always empty;
+	 * the channel is handed back to the connector thread only to wait for
+	 * OP_WRITE (partial write) or to be re-armed for reading (or closed).
+	 */
+	private void completeRequest(final SelectionKey key, final Response response) {
+		final SocketChannel client = (SocketChannel) key.channel();
+		boolean finished = false;
+		try {
+			finished = writeResponse(response, client);
+		} catch (IOException ex) {
+			Log.error(TAG, "Error writing on channel: " + ex.getMessage());
+			response.release();
+			closeOnLoop(client);
+			return;
+		}
+
+		if (finished) {
+			connector.addCallback(new AsyncCallback() {
+
+				@Override
+				public void onCallback() {
+					try {
+						finishRequest(key, response);
+					} catch (IOException ex) {
+						connector.removeKeepAliveTimeout(client);
+						connector.closeChannel(client);
+					}
+				}
+			});
+		} else {
+			connector.addCallback(new AsyncCallback() {
+
+				@Override
+				public void onCallback() {
+					if (key.isValid()) {
+						key.attach(response);
+						key.interestOps(SelectionKey.OP_WRITE);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Close the given channel from the connector thread
+	 */
+	private void closeOnLoop(final SocketChannel client) {
+		connector.addCallback(new AsyncCallback() {
+
+			@Override
+			public void onCallback() {
+				connector.removeKeepAliveTimeout(client);
+				connector.closeChannel(client);
+			}
+		});
+	}
+
 	@Override
 	public void handleWrite(SelectionKey key) throws IOException {
 		if (key.attachment() == null)
 			return;
 
-		boolean finished = false;
 		SocketChannel client = (SocketChannel) key.channel();
 		try {
 			if (key.attachment() instanceof Response) {
 				Response response = (Response) key.attachment();
-				ByteBuffer writeBuffer = (ByteBuffer) response.getResponseData().getByteBuffer();
-
-				IOSocketHelper.writeBuffer(writeBuffer, client);
-				if (!writeBuffer.hasRemaining()) {
-					if (!(finished = response.getFile() == null)) {
-						FileChannel channel = (FileChannel) response.getFile();
-						long bytesWritten = channel.transferTo(channel.position(), channel.size(), client);
-						if (!(finished = bytesWritten < channel.size())) {
-							channel.position(channel.position() + bytesWritten);
-						} else {
-							channel.close();
-						}
-					}
-				}
-				if (finished) {
-					// connector.closeOrRegisterForRead(key, response.isKeepAlive());
-					this.finishRequest(key);
+				if (writeResponse(response, client)) {
+					this.finishRequest(key, response);
+				} else {
+					awaitBody(key, response);
 				}
 			}
 
 		} catch (IOException ex) {
 			Log.error(TAG, "Error writing on channel: " + ex.getMessage());
+			if (key.attachment() instanceof Response) {
+				((Response) key.attachment()).release();
+			}
 			connector.removeKeepAliveTimeout(client);
 			throw ex;
 		}
 	}
 
+	/**
+	 * Write as much as possible of the given response without blocking.
+	 * 
+	 * @return <code>true</code> if the whole response has been written
+	 */
+	private boolean writeResponse(Response response, SocketChannel client) throws IOException {
+		ByteBuffer writeBuffer = (ByteBuffer) response.getResponseData().getByteBuffer();
+
+		ByteBuffer content = response.getContent();
+		if (content != null) {
+			// headers and body in a single gathering write
+			client.write(new ByteBuffer[] { writeBuffer, content });
+			return !writeBuffer.hasRemaining() && !content.hasRemaining();
+		}
+		IOSocketHelper.writeBuffer(writeBuffer, client);
+		if (writeBuffer.hasRemaining()) {
+			return false;
+		}
+		for (BodySegment segment : response.getBodySegments()) {
+			while (segment.hasRemaining()) {
+				if (segment.writeTo(client) == 0) { // socket buffer full
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * When the write stopped on a body segment whose bytes are not ready yet,
+	 * stop waiting for OP_WRITE (the socket is writable, the loop would spin)
+	 * and wait for the segment instead
+	 */
+	private void awaitBody(final SelectionKey key, Response response) {
+		for (BodySegment segment : response.getBodySegments()) {
+			if (!segment.hasRemaining()) {
+				continue;
+			}
+			if (segment instanceof DeferredSegment && !((DeferredSegment) segment).whenReady(new Runnable() {
+
+				@Override
+				public void run() {
+					connector.addCallback(new AsyncCallback() {
+
+						@Override
+						public void onCallback() {
+							if (key.isValid()) {
+								key.interestOps(SelectionKey.OP_WRITE);
+							}
+						}
+					});
+				}
+			})) {
+				key.interestOps(0);
+			}
+			return;
+		}
+	}
+
 	public void finishRequest(SelectionKey key) throws IOException {
 		if (key.attachment() != null && key.attachment() instanceof Response) {
-			Response response = (Response) key.attachment();
-			connector.closeOrRegisterForRead(key, response.isKeepAlive());
+			finishRequest(key, (Response) key.attachment());
 		}
 	}
 
+	private void finishRequest(SelectionKey key, Response response) throws IOException {
+		response.release();
+		connector.closeOrRegisterForRead(key, response.isKeepAlive());
+	}
+
 	public ServerConnector getConnector() {
 		return connector;
 	}
@@ -201,6 +400,91 @@ public class PlainIOHandler implements IOHandler {
 		this.connector = conn;
 	}
 
+	/**
+	 * Process a blocking request on a worker thread. Requests that waited in the
+	 * queue longer than allowed are answered with a "too busy" response instead.
+	 */
+	private class RequestTask implements Runnable {
+
+		private final SelectionKey key;
+
+		private final Request req;
+
+		private final ExecutorService workers;
+
+		private final long enqueuedAt = System.nanoTime();
+
+		private final boolean limited = limiter != null;
+
+		public RequestTask(SelectionKey key, Request req, ExecutorService workers) {
+			this.key = key;
+			this.req = req;
+			this.workers = workers;
+		}
+
+		@Override
+		public void run() {
+			Response response = null;
+			long sample = -1;
+			try {
+				if (workers instanceof LoadSheddingExecutor && ((LoadSheddingExecutor) workers).isExpired(enqueuedAt)) {
+					Log.debug(TAG, "Request expired in worker queue, rejecting request");
+					response = protocol.rejectRequest(req, getRetryAfter(workers));
+				} else {
+					response = protocol.processRequest(req);
+					sample = enqueuedAt;
+				}
+			} catch (Throwable ex) {
+				Log.error(TAG, "Error when processing request: " + ExceptionUtils.getStackTrace(ex));
+				Log.error(TAG, req.toString());
+				closeOnLoop((SocketChannel) key.channel());
+				return;
+			} finally {
+				if (limited) {
+					limiter.release(sample);
+				}
+			}
+			completeRequest(key, response);
+		}
+	}
+
+	/**
+	 * A request waiting for the response of an identical one being processed
+	 */
+	private class PendingRequest implements ResponseListener {
+
+		private final SelectionKey key;
+
+		public PendingRequest(SelectionKey key) {
+			this.key = key;
+		}
+
+		@Override
+		public void onResponse(Response response) {
+			completeRequest(key, response);
+		}
+
+		@Override
+		public void onMiss(final Request req) {
+			connector.addCallback(new AsyncCallback() {
+
+				@Override
+				public void onCallback() {
+					if (!key.isValid()) {
+						return;
+					}
+					try {
+						dispatch(key, req);
+					} catch (IOException ex) {
+						Log.error(TAG, "Error when processing request: " + ex.getMessage());
+						connector.removeKeepAliveTimeout((SocketChannel) key.channel());
+						connector.closeChannel((SocketChannel) key.channel());
+					}
+				}
+			});
+		}
+	}
+
 	@Override
 	public void handleDisconnect(SocketChannel key) {
 		// TODO Auto-generated method stub
@@ -2,6 +2,7 @@ package io.github.ilmich.tempesta.io;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
 
 import io.github.ilmich.tempesta.web.http.Request;
 import io.github.ilmich.tempesta.web.http.Response;
@@ -12,4 +13,78 @@ public abstract class Protocol {
 
 	public abstract Response processRequest(final Request request);
 
+	/**
+	 * Build the response sent when the server is too busy to process the given
+	 * request.
+	 * 
+	 * @param request    the rejected request
+	 * @param retryAfter seconds after which the client may retry
+	 * @return a ready to be sent response
+	 */
+	public abstract Response rejectRequest(final Request request, int retryAfter);
+
+	/**
+	 * Returns a pre-encoded response sent, before closing the connection, to
+	 * clients whose requests are shed before being parsed.
+	 * 
+	 * @return a buffer ready to be written
+	 */
+	public abstract ByteBuffer getOverloadResponse();
+
+	/**
+	 * Tell whether a partially received request is pending on the given client.
+	 */
+	public boolean hasPartialRequest(SocketChannel client) {
+		return false;
+	}
+
+	/**
+	 * Tell whether processing the given request may block. Requests that cannot
+	 * block are processed directly on the connector thread.
+	 * 
+	 * @param request the request about to be processed
+	 * @return <code>true</code> if the request must be processed by a worker
+	 *         thread
+	 */
+	public boolean isBlocking(final Request request) {
+		return true;
+	}
+
+	/**
+	 * Try to answer the given request without processing it, e.g. from a cache.
+	 * Called on the connector thread, must not block.
+	 * 
+	 * @param request the request about to be processed
+	 * @return a ready to be sent response, or <code>null</code> if the request
+	 *         must be processed
+	 */
+	public Response getCachedResponse(final Request request) {
+		return null;
+	}
+
+	/**
+	 * Tell whether the given request can wait for the response of an identical
+	 * request being processed, rather than being processed itself. Called on
+	 * the connector thread after {@link #getCachedResponse(Request)}, must not
+	 * block.
+	 * 
+	 * @param request  the request about to be processed
+	 * @param listener notified once the request being processed completes
+	 * @return <code>true</code> if the listener will be notified,
+	 *         <code>false</code> if the request must be processed
+	 */
+	public boolean awaitResponse(final Request request, ResponseListener listener) {
+		return false;
+	}
+
+	/**
+	 * Returns the executor dedicated to the given request, if any.
+	 * 
+	 * @param request the request about to be processed
+	 * @return the executor or <code>null</code> to use the default one
+	 */
+	public ExecutorService getExecutor(final Request request) {
+		return null;
+	}
+
 }
@@ -0,0 +1,232 @@
+package io.github.ilmich.tempesta.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.ilmich.tempesta.io.buffer.BufferPool;
+import io.github.ilmich.tempesta.util.Closeables;
+import io.github.ilmich.tempesta.web.http.HttpServerDescriptor;
+
+/**
+ * A body segment sending a region of a file read ahead by a small dedicated
+ * pool into pooled direct buffers, so that a page cache miss (slow disk,
+ * network storage) blocks a file I/O thread instead of the event loop. The
+ * loop only writes buffers already filled; up to
+ * {@link HttpServerDescriptor#FILE_IO_READ_AHEAD} buffers are read in advance.
+ * Like {@link FileRegion}, regions may share a channel closed on release.
+ */
+public class ReadAheadFileRegion implements DeferredSegment {
+
+	private final FileChannel channel;
+
+	private final long length;
+
+	private final long end;
+
+	/**
+	 * Offset of the next read, only changed by the read in flight
+	 */
+	private long readPosition;
+
+	/**
+	 * Bytes written so far, only used by the writing thread
+	 */
+	private long written = 0;
+
+	private final ArrayDeque<ByteBuffer> ready = new ArrayDeque<ByteBuffer>();
+
+	/**
+	 * The buffer being written outside the lock, returned to the pool by the
+	 * writing thread only
+	 */
+	private ByteBuffer writing;
+
+	private boolean reading = false;
+
+	private boolean released = false;
+
+	private IOException failure;
+
+	private Runnable listener;
+
+	private final Runnable readTask = new Runnable() {
+
+		@Override
+		public void run() {
+			read();
+		}
+	};
+
+	/**
+	 * @param channel  the file to send
+	 * @param position the offset of the first byte to send
+	 * @param length   the number of bytes to send
+	 */
+	public ReadAheadFileRegion(FileChannel channel, long position, long length) {
+		this.channel = channel;
+		this.readPosition = position;
+		this.length = length;
+		this.end = position + length;
+		synchronized (this) {
+			scheduleRead(); // start reading while the headers are sent
+		}
+	}
+
+	@Override
+	public long writeTo(WritableByteChannel target) throws IOException {
+		ByteBuffer buffer;
+		synchronized (this) {
+			buffer = ready.peek();
+			if (buffer == null) {
+				if (failure != null) {
+					throw failure;
+				}
+				scheduleRead();
+				return 0;
+			}
+			writing = buffer;
+		}
+		int bytesWritten = 0;
+		try {
+			bytesWritten = target.write(buffer);
+		} finally {
+			synchronized (this) {
+				writing = null;
+				if (released) {
+					// left by release() to this thread, it is no longer queued
+					Holder.buffers.release(buffer);
+				} else if (!buffer.hasRemaining()) {
+					ready.poll();
+					Holder.buffers.release(buffer);
+					scheduleRead();
+				}
+			}
+		}
+		written += bytesWritten;
+		return bytesWritten;
+	}
+
+	@Override
+	public synchronized boolean whenReady(Runnable listener) {
+		if (!ready.isEmpty() || failure != null || released) {
+			return true;
+		}
+		this.listener = listener;
+		return false;
+	}
+
+	@Override
+	public boolean hasRemaining() {
+		return written < length;
+	}
+
+	@Override
+	public long length() {
+		return length;
+	}
+
+	@Override
+	public void release() {
+		synchronized (this) {
+			if (released) {
+				return;
+			}
+			released = true;
+			listener = null;
+			ByteBuffer buffer;
+			while ((buffer = ready.poll()) != null) {
+				if (buffer != writing) {
+					Holder.buffers.release(buffer);
+				}
+			}
+		}
+		Closeables.closeQuietly(channel);
+	}
+
+	/**
+	 * Start reading the next chunk if there is room for it, must hold the lock
+	 */
+	private void scheduleRead() {
+		if (!reading && !released && failure == null && readPosition < end
+				&& ready.size() < HttpServerDescriptor.FILE_IO_READ_AHEAD) {
+			reading = true;
+			Holder.executor.execute(readTask);
+		}
+	}
+
+	/**
+	 * Read a chunk on a file I/O thread
+	 */
+	private void read() {
+		ByteBuffer buffer = Holder.buffers.acquire();
+		IOException error = null;
+		try {
+			long position = readPosition;
+			if (end - position < buffer.capacity()) {
+				buffer.limit((int) (end - position));
+			}
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0) {
+					// the file was truncated, the promised bytes can't be sent
+					throw new IOException("File truncated while sending");
+				}
+			}
+			buffer.flip();
+		} catch (IOException e) {
+			error = e;
+		}
+
+		Runnable toNotify;
+		synchronized (this) {
+			reading = false;
+			if (released) {
+				Holder.buffers.release(buffer);
+				return;
+			}
+			if (error != null) {
+				failure = error;
+				Holder.buffers.release(buffer);
+			} else {
+				readPosition += buffer.remaining();
+				ready.add(buffer);
+				scheduleRead();
+			}
+			toNotify = listener;
+			listener = null;
+		}
+		if (toNotify != null) {
+			toNotify.run();
+		}
+	}
+
+	/**
+	 * The file I/O threads and buffers, created on first use so that they pick up
+	 * the {@link HttpServerDescriptor} settings
+	 */
+	private static class Holder {
+
+		private static final AtomicInteger sequence = new AtomicInteger();
+
+		private static final BufferPool buffers = new BufferPool(HttpServerDescriptor.FILE_IO_BUFFER_SIZE,
+				HttpServerDescriptor.FILE_IO_THREADS * HttpServerDescriptor.FILE_IO_READ_AHEAD * 16);
+
+		private static final ExecutorService executor = Executors
+				.newFixedThreadPool(Math.max(1, HttpServerDescriptor.FILE_IO_THREADS), new ThreadFactory() {
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "tempesta-file-io-" + sequence.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+}
@@ -0,0 +1,23 @@
+package io.github.ilmich.tempesta.io;
+
+import io.github.ilmich.tempesta.web.http.Request;
+import io.github.ilmich.tempesta.web.http.Response;
+
+/**
+ * Receives the outcome of a request waiting for the response of another one,
+ * see {@link Protocol#awaitResponse(Request, ResponseListener)}. Methods may
+ * be called from any thread.
+ */
+public interface ResponseListener {
+
+	/**
+	 * The response of the request is ready to be sent
+	 */
+	void onResponse(Response response);
+
+	/**
+	 * No response could be shared, the request must be processed as usual
+	 */
+	void onMiss(Request request);
+
+}
@@ -0,0 +1,58 @@
+package io.github.ilmich.tempesta.io.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct buffers of the same size, so that buffers used for a short
+ * time (e.g. to read a file chunk) are not allocated again for every use.
+ */
+public class BufferPool {
+
+	private final int bufferSize;
+
+	private final int maxPooled;
+
+	private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+	private final AtomicInteger pooled = new AtomicInteger();
+
+	/**
+	 * @param bufferSize the capacity of the buffers, in bytes
+	 * @param maxPooled  the maximum number of idle buffers kept
+	 */
+	public BufferPool(int bufferSize, int maxPooled) {
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+	}
+
+	/**
+	 * Returns a cleared buffer, pooled or new
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer = buffers.poll();
+		if (buffer == null) {
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+		pooled.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Give back a buffer, which must not be used anymore
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer.capacity() == bufferSize && pooled.incrementAndGet() <= maxPooled) {
+			buffers.offer(buffer);
+		} else if (buffer.capacity() == bufferSize) {
+			pooled.decrementAndGet();
+		}
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+}
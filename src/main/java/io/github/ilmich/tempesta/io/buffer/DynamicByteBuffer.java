@@ -42,6 +42,22 @@ public class DynamicByteBuffer {
 		return new DynamicByteBuffer(ByteBuffer.allocate(capacity));
 	}
 
+	/**
+	 * Wrap the given bytes, ready to be read (e.g. written to a channel). The
+	 * array is not copied.
+	 */
+	public static DynamicByteBuffer wrap(byte[] bytes) {
+		return new DynamicByteBuffer(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Wrap the given buffer, ready to be read from its position to its limit.
+	 * It may be direct, in which case {@link #array()} cannot be used.
+	 */
+	public static DynamicByteBuffer wrap(ByteBuffer buffer) {
+		return new DynamicByteBuffer(buffer);
+	}
+
 	/**
 	 * Append the data. Will reallocate if needed.
 	 */
@@ -74,7 +90,13 @@ public class DynamicByteBuffer {
 	 * Prepend the data. Will reallocate if needed.
 	 */
 	public void prepend(String data) {
-		byte[] bytes = data.getBytes(mainCharset);
+		prepend(data.getBytes(mainCharset));
+	}
+
+	/**
+	 * Prepend the data. Will reallocate if needed.
+	 */
+	public void prepend(byte[] bytes) {
 		int newSize = bytes.length + backend.position();
 		byte[] newBuffer = new byte[newSize];
 		System.arraycopy(bytes, 0, newBuffer, 0, bytes.length); // initial line and headers
@@ -19,16 +19,14 @@
  */
 package io.github.ilmich.tempesta.io.callback;
 
-import java.util.AbstractCollection;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import io.github.ilmich.tempesta.web.AsyncCallback;
 
 public class JMXCallbackManager implements CallbackManager, CallbackManagerMXBean {
 
-	private final AbstractCollection<AsyncCallback> callbacks = new ConcurrentLinkedQueue<AsyncCallback>();
+	private final Queue<AsyncCallback> callbacks = new ConcurrentLinkedQueue<AsyncCallback>();
 
 	public JMXCallbackManager() { // instance initialization block
 
@@ -46,11 +44,11 @@ public class JMXCallbackManager implements CallbackManager, CallbackManagerMXBea
 
 	@Override
 	public boolean execute() {
-		// makes a defensive copy to avoid (1) CME (new callbacks are added this
-		// iteration) and (2) IO starvation.
-		List<AsyncCallback> defensive = new ArrayList<AsyncCallback>(callbacks);
-		callbacks.clear();
-		for (AsyncCallback callback : defensive) {
+		// callbacks are added from other threads while draining: only run the ones
+		// queued on entry (avoids IO starvation), the others on next iteration
+		int count = callbacks.size();
+		AsyncCallback callback;
+		while (count-- > 0 && (callback = callbacks.poll()) != null) {
 			callback.onCallback();
 		}
 		return !callbacks.isEmpty();
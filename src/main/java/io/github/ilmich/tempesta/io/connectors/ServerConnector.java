@@ -36,7 +36,9 @@ import io.github.ilmich.tempesta.io.timeout.JMXTimeoutManager;
 import io.github.ilmich.tempesta.io.timeout.Timeout;
 import io.github.ilmich.tempesta.util.Closeables;
 import io.github.ilmich.tempesta.util.Log;
+import io.github.ilmich.tempesta.web.AsyncCallback;
 import io.github.ilmich.tempesta.web.http.HttpServerDescriptor;
+import io.github.ilmich.tempesta.web.http.Response;
 
 public class ServerConnector extends Thread {
 	
@@ -50,6 +52,12 @@ public class ServerConnector extends Thread {
 	private IOHandler ioHandler;
 	private boolean isRunning = false;
 
+	/**
+	 * Smoothed delay (ns) with which the loop serves ready events, kept in
+	 * nanoseconds so that lags shorter than a millisecond still count
+	 */
+	private volatile long loopLagNanos = 0;
+
 	public ServerConnector() {
 		super();
 	}
@@ -83,9 +91,20 @@ public class ServerConnector extends Thread {
 			selector = Selector.open();
 			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
 
+			long lastWakeup = System.nanoTime();
 			while (isRunning) {
 
-				if (selector.select(selectorTimeout) == 0) {
+				long selectStart = System.nanoTime();
+				int selected = selector.select(selectorTimeout);
+				long wakeup = System.nanoTime();
+				// events ready during the previous iteration waited for it to complete,
+				// a timed out select can also come back late on an overloaded host
+				long busy = selectStart - lastWakeup;
+				long late = selected == 0 ? (wakeup - selectStart) - selectorTimeout * 1000000 : 0;
+				updateLoopLag(Math.max(busy, late));
+				lastWakeup = wakeup;
+
+				if (selected == 0) {
 					long ms = tm.execute(); // execute all timeouts
 					// eventually reduce selector timeout in order to execute next
 					// timeout
@@ -135,6 +154,18 @@ public class ServerConnector extends Thread {
 		}
 	}
 
+	private void updateLoopLag(long sample) {
+		long lag = Math.max(0, sample);
+		loopLagNanos += (lag - loopLagNanos) / 8; // only written by the loop thread
+	}
+
+	/**
+	 * Returns how late (ms, smoothed) this connector serves ready events
+	 */
+	public long getLoopLag() {
+		return loopLagNanos / 1000000;
+	}
+
 	public void bind(int port) {
 		this.bind(new InetSocketAddress(port));
 	}
@@ -170,7 +201,21 @@ public class ServerConnector extends Thread {
 		selector.wakeup();
 	}
 
+	/**
+	 * Schedule the given callback to be executed by this connector thread
+	 * during the next loop iteration. Can be called from any thread.
+	 */
+	public void addCallback(AsyncCallback callback) {
+		cm.addCallback(callback);
+		selector.wakeup();
+	}
+
 	public void closeChannel(SocketChannel channel) {
+		SelectionKey key = channel.keyFor(selector);
+		if (key != null && key.attachment() instanceof Response) {
+			// e.g. timed out while sending, release what its body holds
+			((Response) key.attachment()).release();
+		}
 		ioHandler.handleDisconnect(channel);
 		Closeables.closeQuietly(channel);
 	}
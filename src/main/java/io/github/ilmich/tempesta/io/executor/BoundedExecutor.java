@@ -0,0 +1,135 @@
+package io.github.ilmich.tempesta.io.executor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.ilmich.tempesta.util.MXBeanUtil;
+import io.github.ilmich.tempesta.web.http.HttpServerDescriptor;
+
+/**
+ * A fixed size thread pool with a bounded queue. When both threads and queue
+ * are exhausted tasks are rejected with a {@link RejectedExecutionException}
+ * instead of spawning new threads, and tasks that waited in the queue longer
+ * than the queue timeout can be detected through {@link #isExpired(long)} and
+ * dropped by the caller.
+ */
+public class BoundedExecutor extends ThreadPoolExecutor implements LoadSheddingExecutor, BoundedExecutorMXBean {
+
+	private final String name;
+
+	private final int queueCapacity;
+
+	/**
+	 * Maximum time (ms) a task may wait in the queue, 0 means no limit
+	 */
+	private final long queueTimeout;
+
+	/**
+	 * Seconds suggested to clients before retrying a rejected request
+	 */
+	private final int retryAfter;
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private final AtomicLong expired = new AtomicLong();
+
+	public BoundedExecutor(String name) {
+		this(name, HttpServerDescriptor.MAX_THREADS_PROCESSOR, HttpServerDescriptor.MAX_QUEUED_REQUESTS,
+				HttpServerDescriptor.QUEUE_TIMEOUT, HttpServerDescriptor.RETRY_AFTER);
+	}
+
+	public BoundedExecutor(String name, int threads, int queueCapacity, long queueTimeout, int retryAfter) {
+		super(threads, threads, HttpServerDescriptor.THREAD_PROCESSOR_IDLE_TIME, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)), new WorkerThreadFactory(name));
+		allowCoreThreadTimeOut(true);
+		this.name = name;
+		this.queueCapacity = Math.max(1, queueCapacity);
+		this.queueTimeout = queueTimeout;
+		this.retryAfter = retryAfter;
+		MXBeanUtil.registerMXBean(this, "Executor", name);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		try {
+			super.execute(command);
+		} catch (RejectedExecutionException ex) {
+			rejected.incrementAndGet();
+			throw ex;
+		}
+	}
+
+	@Override
+	public boolean isExpired(long enqueuedAt) {
+		if (queueTimeout > 0 && System.nanoTime() - enqueuedAt > TimeUnit.MILLISECONDS.toNanos(queueTimeout)) {
+			expired.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+
+	@Override
+	protected void terminated() {
+		MXBeanUtil.unregisterMXBean("Executor", name);
+	}
+
+	// implements BoundedExecutorMXBean
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getQueueSize() {
+		return getQueue().size();
+	}
+
+	@Override
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	@Override
+	public long getQueueTimeout() {
+		return queueTimeout;
+	}
+
+	@Override
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	@Override
+	public long getExpiredCount() {
+		return expired.get();
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		private final String prefix;
+
+		public WorkerThreadFactory(String name) {
+			this.prefix = "tempesta-" + name + "-";
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+}
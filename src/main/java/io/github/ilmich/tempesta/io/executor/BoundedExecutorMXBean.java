@@ -0,0 +1,25 @@
+package io.github.ilmich.tempesta.io.executor;
+
+public interface BoundedExecutorMXBean {
+
+	String getName();
+
+	int getActiveCount();
+
+	int getPoolSize();
+
+	int getMaximumPoolSize();
+
+	int getQueueSize();
+
+	int getQueueCapacity();
+
+	long getQueueTimeout();
+
+	long getCompletedTaskCount();
+
+	long getRejectedCount();
+
+	long getExpiredCount();
+
+}
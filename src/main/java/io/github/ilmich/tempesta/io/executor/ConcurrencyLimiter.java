@@ -0,0 +1,203 @@
+package io.github.ilmich.tempesta.io.executor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.ilmich.tempesta.util.MXBeanUtil;
+
+/**
+ * Adaptive limit on the number of requests in flight.
+ * <p>
+ * The limit follows a gradient algorithm on the measured request latency: a
+ * slow moving average of the latency is used as baseline and compared with a
+ * fast moving one. While the two agree the limit grows by about the square
+ * root of itself, when latency rises (requests start queueing) the limit
+ * shrinks proportionally. The limit is also cut when the connector loop lags,
+ * that is when events are served later than they should be.
+ */
+public class ConcurrencyLimiter implements ConcurrencyLimiterMXBean {
+
+	private static final int DEFAULT_INITIAL_LIMIT = 20;
+
+	private static final int DEFAULT_MIN_LIMIT = 4;
+
+	private static final int DEFAULT_MAX_LIMIT = 1000;
+
+	/**
+	 * Loop lag (ms) above which the limit is reduced
+	 */
+	private static final long DEFAULT_MAX_LOOP_LAG = 50;
+
+	/**
+	 * Minimum interval (ms) between two decreases due to loop lag
+	 */
+	private static final long LAG_DECREASE_INTERVAL = 100;
+
+	private static final double SHORT_WINDOW = 0.2;
+
+	private static final double LONG_WINDOW = 0.01;
+
+	private static final double SMOOTHING = 0.2;
+
+	private final String name;
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final long maxLoopLag;
+
+	private final AtomicInteger inflight = new AtomicInteger();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private volatile double limit;
+
+	private double shortRtt = 0;
+
+	private double longRtt = 0;
+
+	private volatile long loopLag = 0;
+
+	private long lastLagDecrease = 0;
+
+	public ConcurrencyLimiter(String name) {
+		this(name, DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_MAX_LOOP_LAG);
+	}
+
+	public ConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, long maxLoopLag) {
+		this.name = name;
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.maxLoopLag = maxLoopLag;
+		MXBeanUtil.registerMXBean(this, "ConcurrencyLimiter", name);
+	}
+
+	/**
+	 * Cheap check, used to shed new requests before even parsing them.
+	 * 
+	 * @return <code>true</code> if no more requests should be accepted
+	 */
+	public boolean isSaturated() {
+		if (inflight.get() >= (int) limit) {
+			rejected.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Try to account a new request in flight.
+	 * 
+	 * @return <code>true</code> if the request is accepted, in which case
+	 *         {@link #release(long)} must be called once it completes
+	 */
+	public boolean tryAcquire() {
+		while (true) {
+			int current = inflight.get();
+			if (current >= (int) limit) {
+				rejected.incrementAndGet();
+				return false;
+			}
+			if (inflight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Release a request accepted by {@link #tryAcquire()} and use its latency to
+	 * update the limit.
+	 * 
+	 * @param startedAt the time the request was accepted, as returned by
+	 *                  {@link System#nanoTime()}, or a negative value to release
+	 *                  without sampling (e.g. the request was dropped)
+	 */
+	public void release(long startedAt) {
+		int current = inflight.getAndDecrement();
+		if (startedAt >= 0) {
+			onSample(System.nanoTime() - startedAt, current);
+		}
+	}
+
+	private synchronized void onSample(long rtt, int inflight) {
+		if (longRtt == 0) {
+			shortRtt = rtt;
+			longRtt = rtt;
+			return;
+		}
+		shortRtt = shortRtt * (1 - SHORT_WINDOW) + rtt * SHORT_WINDOW;
+		longRtt = longRtt * (1 - LONG_WINDOW) + rtt * LONG_WINDOW;
+
+		// let the baseline recover quickly once latency drops again
+		if (longRtt > shortRtt * 2) {
+			longRtt = shortRtt * 2;
+		}
+
+		// do not grow the limit when it is not being used
+		if (inflight < limit / 2) {
+			return;
+		}
+
+		double gradient = Math.max(0.5, Math.min(1.0, longRtt / shortRtt));
+		double newLimit = limit * gradient + Math.sqrt(limit);
+		newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+		limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+	}
+
+	/**
+	 * Notify the limiter about the current connector loop lag
+	 * 
+	 * @param lag the lag in milliseconds
+	 */
+	public void onLoopLag(long lag) {
+		loopLag = lag;
+		if (lag > maxLoopLag) {
+			long now = System.nanoTime();
+			synchronized (this) {
+				if (now - lastLagDecrease > TimeUnit.MILLISECONDS.toNanos(LAG_DECREASE_INTERVAL)) {
+					lastLagDecrease = now;
+					limit = Math.max(minLimit, limit * 0.9);
+				}
+			}
+		}
+	}
+
+	// implements ConcurrencyLimiterMXBean
+	@Override
+	public int getLimit() {
+		return (int) limit;
+	}
+
+	@Override
+	public int getInflight() {
+		return inflight.get();
+	}
+
+	@Override
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	@Override
+	public synchronized double getShortRtt() {
+		return shortRtt / 1000000;
+	}
+
+	@Override
+	public synchronized double getLongRtt() {
+		return longRtt / 1000000;
+	}
+
+	@Override
+	public long getLoopLag() {
+		return loopLag;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+}
@@ -0,0 +1,17 @@
+package io.github.ilmich.tempesta.io.executor;
+
+public interface ConcurrencyLimiterMXBean {
+
+	int getLimit();
+
+	int getInflight();
+
+	long getRejectedCount();
+
+	double getShortRtt();
+
+	double getLongRtt();
+
+	long getLoopLag();
+
+}
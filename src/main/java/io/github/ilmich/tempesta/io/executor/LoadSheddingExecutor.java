@@ -0,0 +1,27 @@
+package io.github.ilmich.tempesta.io.executor;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * An {@link ExecutorService} that rejects work when saturated instead of
+ * growing without bounds. Rejected requests are answered with a "too busy"
+ * response suggesting the client to retry after {@link #getRetryAfter()}
+ * seconds.
+ */
+public interface LoadSheddingExecutor extends ExecutorService {
+
+	/**
+	 * Seconds suggested to clients before retrying a rejected request
+	 */
+	int getRetryAfter();
+
+	/**
+	 * Check whether a task enqueued at the given time waited too long before
+	 * being executed.
+	 * 
+	 * @param enqueuedAt the enqueue time as returned by {@link System#nanoTime()}
+	 * @return <code>true</code> if the task expired and should be dropped
+	 */
+	boolean isExpired(long enqueuedAt);
+
+}
@@ -0,0 +1,205 @@
+package io.github.ilmich.tempesta.io.executor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.ilmich.tempesta.util.MXBeanUtil;
+import io.github.ilmich.tempesta.web.http.HttpServerDescriptor;
+
+/**
+ * Runs each task on its own virtual thread, so handlers written in blocking
+ * style do not tie up a platform thread while they wait. The number of tasks
+ * in flight is still capped: when the limit is reached tasks are rejected with
+ * a {@link RejectedExecutionException}.
+ * <p>
+ * Requires Java 21, see {@link VirtualThreads#isSupported()}.
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService
+		implements LoadSheddingExecutor, BoundedExecutorMXBean {
+
+	private final String name;
+
+	private final ThreadFactory factory;
+
+	private final int maxConcurrency;
+
+	private final int retryAfter;
+
+	private final Semaphore permits;
+
+	private final AtomicInteger active = new AtomicInteger();
+
+	private final AtomicLong completed = new AtomicLong();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private volatile boolean shutdown = false;
+
+	public VirtualThreadExecutor(String name) {
+		this(name, HttpServerDescriptor.MAX_VIRTUAL_THREADS, HttpServerDescriptor.RETRY_AFTER);
+	}
+
+	/**
+	 * @throws UnsupportedOperationException if virtual threads are not supported
+	 *                                       by the running JVM
+	 */
+	public VirtualThreadExecutor(String name, int maxConcurrency, int retryAfter) {
+		this.factory = VirtualThreads.newFactory("tempesta-" + name + "-");
+		this.name = name;
+		this.maxConcurrency = maxConcurrency;
+		this.retryAfter = retryAfter;
+		this.permits = new Semaphore(maxConcurrency);
+		MXBeanUtil.registerMXBean(this, "Executor", name);
+	}
+
+	@Override
+	public void execute(final Runnable command) {
+		if (shutdown) {
+			throw new RejectedExecutionException("Executor " + name + " is shut down");
+		}
+		if (!permits.tryAcquire()) {
+			rejected.incrementAndGet();
+			throw new RejectedExecutionException("Executor " + name + " saturated");
+		}
+		active.incrementAndGet();
+		try {
+			factory.newThread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						command.run();
+					} finally {
+						release();
+					}
+				}
+			}).start();
+		} catch (RuntimeException ex) {
+			release();
+			throw ex;
+		}
+	}
+
+	private void release() {
+		completed.incrementAndGet();
+		permits.release();
+		if (active.decrementAndGet() == 0 && shutdown) {
+			synchronized (this) {
+				notifyAll();
+				MXBeanUtil.unregisterMXBean("Executor", name);
+			}
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		if (active.get() == 0) {
+			MXBeanUtil.unregisterMXBean("Executor", name);
+		}
+	}
+
+	/**
+	 * Virtual threads are never queued, running tasks are left to complete.
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		shutdown();
+		return Collections.emptyList();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return shutdown && active.get() == 0;
+	}
+
+	@Override
+	public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!isTerminated()) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return false;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return true;
+	}
+
+	@Override
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+
+	/**
+	 * Tasks start immediately on their own thread, they never wait in a queue.
+	 */
+	@Override
+	public boolean isExpired(long enqueuedAt) {
+		return false;
+	}
+
+	// implements BoundedExecutorMXBean
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	@Override
+	public int getPoolSize() {
+		return active.get();
+	}
+
+	@Override
+	public int getMaximumPoolSize() {
+		return maxConcurrency;
+	}
+
+	@Override
+	public int getQueueSize() {
+		return 0;
+	}
+
+	@Override
+	public int getQueueCapacity() {
+		return 0;
+	}
+
+	@Override
+	public long getQueueTimeout() {
+		return 0;
+	}
+
+	@Override
+	public long getCompletedTaskCount() {
+		return completed.get();
+	}
+
+	@Override
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	@Override
+	public long getExpiredCount() {
+		return 0;
+	}
+
+}
@@ -0,0 +1,35 @@
+package io.github.ilmich.tempesta.io.executor;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads. They require Java 21: this is the fallback used on
+ * older runtimes, the real implementation is packaged in the multi-release jar
+ * under META-INF/versions/21.
+ */
+public class VirtualThreads {
+
+	/**
+	 * @return <code>true</code> if the running JVM supports virtual threads
+	 */
+	public static boolean isSupported() {
+		return false;
+	}
+
+	/**
+	 * Create a factory of virtual threads named after the given prefix.
+	 * 
+	 * @throws UnsupportedOperationException if virtual threads are not supported
+	 */
+	public static ThreadFactory newFactory(String prefix) {
+		throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+	}
+
+	/**
+	 * @return <code>true</code> if the given thread is a virtual thread
+	 */
+	public static boolean isVirtual(Thread thread) {
+		return false;
+	}
+
+}
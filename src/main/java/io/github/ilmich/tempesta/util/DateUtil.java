@@ -19,6 +19,7 @@
  */
 package io.github.ilmich.tempesta.util;
 
+import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -35,6 +36,11 @@ public class DateUtil {
 	private final static String RFC_1123_PATTERN = "EEE, dd MMM yyyy HH:mm:ss zzz";
 	private final static DateFormat RFC_1123_FORMAT;
 
+	/**
+	 * The current date, formatted once per second
+	 */
+	private static volatile CurrentDate current;
+
 	/** Pattern to find digits only. */
 	private final static Pattern DIGIT_PATTERN = Pattern.compile("^\\d+$");
 
@@ -45,8 +51,41 @@ public class DateUtil {
 	}
 
 	public static String getCurrentAsString() {
-		synchronized (DateUtil.RFC_1123_FORMAT) {
-			return DateUtil.RFC_1123_FORMAT.format(new Date());
+		return getCurrentDate().text;
+	}
+
+	/**
+	 * Returns the current date in the <em>RFC 1123</em> format as ASCII bytes.
+	 * The same array is returned during a second: it must not be modified, and
+	 * a new array tells the date has changed.
+	 */
+	public static byte[] getCurrentAsBytes() {
+		return getCurrentDate().bytes;
+	}
+
+	private static CurrentDate getCurrentDate() {
+		long second = System.currentTimeMillis() / 1000;
+		CurrentDate date = current;
+		if (date == null || date.second != second) {
+			// threads racing here format the same date
+			synchronized (DateUtil.RFC_1123_FORMAT) {
+				date = new CurrentDate(second, DateUtil.RFC_1123_FORMAT.format(new Date(second * 1000)));
+			}
+			current = date;
+		}
+		return date;
+	}
+
+	private static class CurrentDate {
+
+		private final long second;
+		private final String text;
+		private final byte[] bytes;
+
+		private CurrentDate(long second, String text) {
+			this.second = second;
+			this.text = text;
+			this.bytes = text.getBytes(Charset.forName("ASCII"));
 		}
 	}
 
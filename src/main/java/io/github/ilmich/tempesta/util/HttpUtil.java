@@ -20,20 +20,14 @@
 package io.github.ilmich.tempesta.util;
 
 import java.io.File;
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
 
+import io.github.ilmich.tempesta.web.http.HttpServerDescriptor;
 import io.github.ilmich.tempesta.web.http.Request;
 
 public class HttpUtil {
 
-	/*
-	 * MessageDigest are not thread-safe and are expensive to create. Do it lazily
-	 * for each thread that need access to one.
-	 */
-	private static final ThreadLocal<MessageDigest> md = new ThreadLocal<MessageDigest>();
-
 	public static boolean verifyRequest(Request request) {
 		String version = request.getVersion();
 		boolean requestOk = true;
@@ -45,19 +39,154 @@ public class HttpUtil {
 		return requestOk;
 	}
 
+	/**
+	 * Returns the host name of the given <code>Host</code> header value, lower
+	 * case and without port or trailing dot, e.g. "example.com" for
+	 * "Example.com.:8080"
+	 */
+	public static String getHostName(String host) {
+		int end = host.length();
+		int colon = host.lastIndexOf(':');
+		if (colon > host.lastIndexOf(']')) {
+			end = colon;
+		}
+		if (end > 0 && host.charAt(end - 1) == '.') {
+			end--;
+		}
+		return host.substring(0, end).toLowerCase();
+	}
+
+	/**
+	 * Returns <code>true</code> if the given <code>Accept-Encoding</code> header
+	 * value accepts the content coding, explicitly or through "*", with a non
+	 * zero quality
+	 */
+	public static boolean acceptsEncoding(String acceptEncoding, String coding) {
+		int wildcard = -1; // not listed
+		for (String item : acceptEncoding.split(",")) {
+			int semicolon = item.indexOf(';');
+			String name = (semicolon < 0 ? item : item.substring(0, semicolon)).trim();
+			boolean accepted = semicolon < 0 || getQuality(item.substring(semicolon + 1)) > 0;
+			if (name.equalsIgnoreCase(coding) || name.equalsIgnoreCase("x-" + coding)) {
+				return accepted;
+			}
+			if (name.equals("*")) {
+				wildcard = accepted ? 1 : 0;
+			}
+		}
+		return wildcard == 1;
+	}
+
+	private static float getQuality(String parameters) {
+		for (String parameter : parameters.split(";")) {
+			parameter = parameter.trim();
+			if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+				try {
+					return Float.parseFloat(parameter.substring(2).trim());
+				} catch (NumberFormatException e) {
+					return 0;
+				}
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * Returns <code>true</code> if the content type is worth compressing, see
+	 * {@link HttpServerDescriptor#COMPRESSIBLE_TYPES}
+	 */
+	public static boolean isCompressible(String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+		for (String type : HttpServerDescriptor.COMPRESSIBLE_TYPES) {
+			if (contentType.regionMatches(true, 0, type, 0, type.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public static String getEtag(byte[] bytes) {
-		if (md.get() == null) {
-			try {
-				md.set(MessageDigest.getInstance("MD5"));
-			} catch (NoSuchAlgorithmException e) {
-				throw new RuntimeException("MD5 cryptographic algorithm is not available.", e);
+		return getEtag(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Returns a strong entity tag for the given bytes, e.g. "\"1c291ca3-2a\"",
+	 * from their CRC32 and length
+	 */
+	public static String getEtag(byte[] bytes, int offset, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes, offset, length);
+		return toEtag(crc, length);
+	}
+
+	/**
+	 * Returns a strong entity tag for the remaining bytes of the buffer, its
+	 * position is left unchanged
+	 */
+	public static String getEtag(ByteBuffer buffer) {
+		CRC32 crc = new CRC32();
+		int length = buffer.remaining();
+		crc.update(buffer.duplicate());
+		return toEtag(crc, length);
+	}
+
+	private static String toEtag(CRC32 crc, long length) {
+		return "\"" + Long.toHexString(crc.getValue()) + "-" + Long.toHexString(length) + "\"";
+	}
+
+	/**
+	 * Returns <code>true</code> if the client already has the representation
+	 * with the given validators, i.e. a GET or HEAD may be answered with "304 Not
+	 * Modified". "If-None-Match" is compared with the entity tag, weakly, and
+	 * takes precedence over "If-Modified-Since".
+	 * 
+	 * @param ifNoneMatch     the If-None-Match header, <code>null</code> if none
+	 * @param ifModifiedSince the If-Modified-Since header, <code>null</code> if
+	 *                        none
+	 * @param etag            the entity tag, <code>null</code> if unknown
+	 * @param lastModified    the modification time in milliseconds, negative if
+	 *                        unknown
+	 */
+	public static boolean isNotModified(String ifNoneMatch, String ifModifiedSince, String etag,
+			long lastModified) {
+		if (ifNoneMatch != null) {
+			return etag != null && matchesEtag(ifNoneMatch, etag);
+		}
+		if (ifModifiedSince != null && lastModified >= 0) {
+			// HTTP dates have a one second resolution
+			return lastModified / 1000 <= DateUtil.parseToMilliseconds(ifModifiedSince.trim()) / 1000;
+		}
+		return false;
+	}
+
+	private static boolean matchesEtag(String ifNoneMatch, String etag) {
+		if (ifNoneMatch.trim().equals("*")) {
+			return true;
+		}
+		String opaque = stripWeak(etag);
+		for (String tag : ifNoneMatch.split(",")) {
+			if (stripWeak(tag.trim()).equals(opaque)) {
+				return true;
 			}
 		}
-		byte[] digest = md.get().digest(bytes);
-		BigInteger number = new BigInteger(1, digest);
-		// prepend a '0' to get a proper MD5 hash
-		return '0' + number.toString(16);
+		return false;
+	}
+
+	private static String stripWeak(String etag) {
+		return etag.startsWith("W/") ? etag.substring(2) : etag;
+	}
 
+	/**
+	 * Returns the given entity tag as a quoted string, e.g. "\"v1\"" for "v1",
+	 * left unchanged if already quoted or weak
+	 */
+	public static String quoteEtag(String etag) {
+		if (etag.startsWith("\"") || etag.startsWith("W/")) {
+			return etag;
+		}
+		return "\"" + etag + "\"";
 	}
 
 	public static String getEtag(File file) {
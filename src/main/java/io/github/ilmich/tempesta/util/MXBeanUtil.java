@@ -0,0 +1,45 @@
+package io.github.ilmich.tempesta.util;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class MXBeanUtil {
+
+	private static final String TAG = "MXBeanUtil";
+
+	private static final String DOMAIN = "io.github.ilmich.tempesta";
+
+	/**
+	 * Register the given bean in the platform MBean server under the name
+	 * <code>io.github.ilmich.tempesta:type=&lt;type&gt;,name=&lt;name&gt;</code>.
+	 * Registration failures are logged and otherwise ignored.
+	 */
+	public static void registerMXBean(Object self, String type, String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(self, objectName(type, name));
+		} catch (JMException e) {
+			Log.warn(TAG, "Unable to register " + type + " MXBean " + name + ": " + e.getMessage());
+		}
+	}
+
+	public static void unregisterMXBean(String type, String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = objectName(type, name);
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (JMException e) {
+			Log.warn(TAG, "Unable to unregister " + type + " MXBean " + name + ": " + e.getMessage());
+		}
+	}
+
+	private static ObjectName objectName(String type, String name) throws JMException {
+		return new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+	}
+
+}
@@ -1,9 +1,61 @@
 package io.github.ilmich.tempesta.util;
 
-import javax.activation.MimetypesFileTypeMap;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
+import io.github.ilmich.tempesta.web.http.HttpServerDescriptor;
+
+/**
+ * Holds the {@link MimeTypeMap} shared by the static content handlers: the
+ * built-in table, extended by <code>META-INF/mime.types</code> on the
+ * classpath and by {@link HttpServerDescriptor#MIME_TYPES_FILE} when they
+ * exist.
+ */
 public class MimeFileTypeMapFactory {
 
-	private static MimetypesFileTypeMap instance;
+	private static final String TAG = "MimeFileTypeMapFactory";
+
+	private static volatile MimeTypeMap instance;
+
+	public static MimeTypeMap getInstance() {
+		MimeTypeMap map = instance;
+		if (map == null) {
+			synchronized (MimeFileTypeMapFactory.class) {
+				if (instance == null) {
+					instance = create();
+				}
+				map = instance;
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Replace the shared table, e.g. to add types at runtime
+	 */
+	public static void setInstance(MimeTypeMap map) {
+		instance = map;
+	}
+
+	private static MimeTypeMap create() {
+		MimeTypeMap.Builder builder = new MimeTypeMap.Builder();
+		InputStream in = MimeFileTypeMapFactory.class.getClassLoader().getResourceAsStream("META-INF/mime.types");
+		try {
+			if (in != null) {
+				builder.load(in);
+			}
+			if (HttpServerDescriptor.MIME_TYPES_FILE != null) {
+				Closeables.closeQuietly(in);
+				in = new FileInputStream(HttpServerDescriptor.MIME_TYPES_FILE);
+				builder.load(in);
+			}
+		} catch (IOException e) {
+			Log.warn(TAG, "Cannot load MIME types: " + e.getMessage());
+		} finally {
+			Closeables.closeQuietly(in);
+		}
+		return builder.build();
+	}
 
 }
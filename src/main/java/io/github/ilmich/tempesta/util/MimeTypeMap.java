@@ -1,21 +1,275 @@
 package io.github.ilmich.tempesta.util;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-import javax.activation.FileTypeMap;
+/**
+ * An immutable table from file extensions to MIME types.
+ * <p>
+ * Lookups are lock free and allocation free: the extension is hashed and
+ * compared in place in the file name (case insensitive) against an open
+ * addressing table kept at most one quarter full, so that a lookup is almost
+ * always a single probe. Each entry also holds its "Content-Type" header line
+ * already encoded.
+ * <p>
+ * The table holds the common web types and can be extended with files in the
+ * <code>mime.types</code> format: one type per line followed by its
+ * extensions, "#" starting a comment. Text types (and JavaScript, JSON) are
+ * declared UTF-8.
+ */
+public final class MimeTypeMap {
 
-public class MimeTypeMap extends FileTypeMap {
+	public static final String DEFAULT_TYPE = "application/octet-stream";
+
+	private static final Charset ASCII = Charset.forName("ASCII");
+
+	private static final String[] BUILTIN = { //
+			"text/html html htm shtml", //
+			"text/css css", //
+			"text/xml xml", //
+			"text/plain txt text log conf ini", //
+			"text/csv csv", //
+			"text/markdown md markdown", //
+			"text/calendar ics", //
+			"text/vtt vtt", //
+			"application/javascript js mjs", //
+			"application/json json map", //
+			"application/manifest+json webmanifest", //
+			"application/ld+json jsonld", //
+			"application/xhtml+xml xhtml", //
+			"application/rss+xml rss", //
+			"application/atom+xml atom", //
+			"application/wasm wasm", //
+			"application/pdf pdf", //
+			"application/zip zip", //
+			"application/gzip gz", //
+			"application/x-tar tar", //
+			"application/x-7z-compressed 7z", //
+			"application/java-archive jar war ear", //
+			"application/msword doc", //
+			"application/vnd.ms-excel xls", //
+			"application/vnd.ms-powerpoint ppt", //
+			"application/vnd.openxmlformats-officedocument.wordprocessingml.document docx", //
+			"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet xlsx", //
+			"application/vnd.openxmlformats-officedocument.presentationml.presentation pptx", //
+			"application/rtf rtf", //
+			"application/octet-stream bin exe dll iso img dmg", //
+			"image/gif gif", //
+			"image/jpeg jpeg jpg jpe", //
+			"image/png png", //
+			"image/webp webp", //
+			"image/avif avif", //
+			"image/svg+xml svg svgz", //
+			"image/x-icon ico", //
+			"image/bmp bmp", //
+			"image/tiff tif tiff", //
+			"font/woff woff", //
+			"font/woff2 woff2", //
+			"font/ttf ttf", //
+			"font/otf otf", //
+			"application/vnd.ms-fontobject eot", //
+			"audio/mpeg mp3", //
+			"audio/ogg ogg oga", //
+			"audio/wav wav", //
+			"audio/webm weba", //
+			"audio/aac aac", //
+			"audio/flac flac", //
+			"video/mp4 mp4 m4v", //
+			"video/webm webm", //
+			"video/ogg ogv", //
+			"video/quicktime mov", //
+			"video/x-msvideo avi", //
+			"video/mp2t ts", //
+			"application/vnd.apple.mpegurl m3u8", //
+			"application/dash+xml mpd" };
+
+	private final String[] extensions;
+
+	private final String[] types;
+
+	private final byte[][] headers;
+
+	private final int mask;
+
+	private final String defaultType;
+
+	private final byte[] defaultHeader;
+
+	private MimeTypeMap(Map<String, String> table, String defaultType) {
+		int capacity = Integer.highestOneBit(Math.max(table.size(), 4) * 4 - 1) << 1;
+		this.extensions = new String[capacity];
+		this.types = new String[capacity];
+		this.headers = new byte[capacity][];
+		this.mask = capacity - 1;
+		this.defaultType = defaultType;
+		this.defaultHeader = encodeHeader(defaultType);
+		for (Map.Entry<String, String> e : table.entrySet()) {
+			String extension = e.getKey();
+			int slot = hash(extension, 0, extension.length()) & mask;
+			while (extensions[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			extensions[slot] = extension;
+			types[slot] = e.getValue();
+			headers[slot] = encodeHeader(e.getValue());
+		}
+	}
+
+	/**
+	 * Returns the built-in table
+	 */
+	public static MimeTypeMap builtin() {
+		return new Builder().build();
+	}
+
+	/**
+	 * Returns the built-in table extended (and overridden) by the given
+	 * <code>mime.types</code> content
+	 */
+	public static MimeTypeMap load(InputStream in) throws IOException {
+		return new Builder().load(in).build();
+	}
+
+	/**
+	 * Returns the MIME type of the given file name, from its extension, or
+	 * {@link #DEFAULT_TYPE} if unknown
+	 */
+	public String getContentType(String fileName) {
+		int slot = find(fileName);
+		return slot >= 0 ? types[slot] : defaultType;
+	}
 
-	@Override
 	public String getContentType(File file) {
-		// TODO Auto-generated method stub
-		return null;
+		return getContentType(file.getName());
+	}
+
+	/**
+	 * Returns the encoded header line "Content-Type: type\r\n" of the given file
+	 * name. Must not be modified.
+	 */
+	public byte[] getContentTypeHeader(String fileName) {
+		int slot = find(fileName);
+		return slot >= 0 ? headers[slot] : defaultHeader;
 	}
 
-	@Override
-	public String getContentType(String filename) {
-		// TODO Auto-generated method stub
-		return null;
+	public int size() {
+		int size = 0;
+		for (String extension : extensions) {
+			if (extension != null) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	private int find(String fileName) {
+		int dot = fileName.lastIndexOf('.');
+		if (dot < 0 || dot < fileName.lastIndexOf('/') || dot < fileName.lastIndexOf(File.separatorChar)) {
+			return -1;
+		}
+		int start = dot + 1;
+		int length = fileName.length() - start;
+		int slot = hash(fileName, start, fileName.length()) & mask;
+		String extension;
+		while ((extension = extensions[slot]) != null) {
+			if (extension.length() == length && fileName.regionMatches(true, start, extension, 0, length)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Case insensitive hash of the ASCII characters in the given range, spread
+	 * so that the low bits used as index differ
+	 */
+	private static int hash(String s, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			char c = s.charAt(i);
+			if (c >= 'A' && c <= 'Z') {
+				c += 'a' - 'A';
+			}
+			h = 31 * h + c;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private static byte[] encodeHeader(String type) {
+		return ("Content-Type: " + type + "\r\n").getBytes(ASCII);
+	}
+
+	/**
+	 * Build a table from the built-in types and <code>mime.types</code> files
+	 */
+	public static class Builder {
+
+		private final Map<String, String> table = new LinkedHashMap<String, String>();
+
+		private String defaultType = DEFAULT_TYPE;
+
+		public Builder() {
+			for (String line : BUILTIN) {
+				parse(line);
+			}
+		}
+
+		/**
+		 * Add the types of the given <code>mime.types</code> content, overriding
+		 * the ones already known
+		 */
+		public Builder load(InputStream in) throws IOException {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, ASCII));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int comment = line.indexOf('#');
+				parse(comment >= 0 ? line.substring(0, comment) : line);
+			}
+			return this;
+		}
+
+		public Builder add(String type, String... extensions) {
+			for (String extension : extensions) {
+				table.put(extension.toLowerCase(), withCharset(type));
+			}
+			return this;
+		}
+
+		/**
+		 * Set the type of the files without a known extension
+		 */
+		public Builder setDefaultType(String defaultType) {
+			this.defaultType = defaultType;
+			return this;
+		}
+
+		public MimeTypeMap build() {
+			return new MimeTypeMap(table, withCharset(defaultType));
+		}
+
+		private void parse(String line) {
+			String[] tokens = line.trim().split("\\s+");
+			if (tokens.length > 1) {
+				String[] extensions = new String[tokens.length - 1];
+				System.arraycopy(tokens, 1, extensions, 0, extensions.length);
+				add(tokens[0], extensions);
+			}
+		}
+
+		private static String withCharset(String type) {
+			if (type.indexOf(';') < 0 && (type.startsWith("text/") || type.equals("application/javascript")
+					|| type.equals("application/json"))) {
+				return type + "; charset=utf-8";
+			}
+			return type;
+		}
 	}
 
 }
@@ -0,0 +1,60 @@
+package io.github.ilmich.tempesta.web.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import io.github.ilmich.tempesta.web.handler.HandlerLifecycle;
+import io.github.ilmich.tempesta.web.http.protocol.HttpVerb;
+
+/**
+ * Maps an {@link io.github.ilmich.tempesta.web.http.HttpRequestHandler} to
+ * one or more routes, e.g.
+ * 
+ * <pre>
+ * &#64;Path(value = "/users/{id}", verbs = { HttpVerb.GET, HttpVerb.DELETE })
+ * public class UserHandler extends HttpRequestHandler { ... }
+ * </pre>
+ * 
+ * The routes are collected at build time by {@link RouteProcessor} into a
+ * generated route index, and registered by
+ * {@link io.github.ilmich.tempesta.web.http.HttpHandlerFactory#addRouteIndexes(String)}
+ * without scanning the classpath. The handler must be a public top level or
+ * static nested class with a public no-argument constructor; a single instance
+ * serves all its routes.
+ * <p>
+ * Incremental builds keep the routes of the handlers not recompiled, as long
+ * as the class output of the previous build is kept. Handlers of a package are
+ * indexed together: a build that moves them between source sets or output
+ * directories must be a full rebuild.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Path {
+
+	/**
+	 * The path patterns, see {@link io.github.ilmich.tempesta.web.http.router.Route}
+	 * for the syntax
+	 */
+	String[] value();
+
+	/**
+	 * The verbs served, all of them if empty
+	 */
+	HttpVerb[] verbs() default {};
+
+	/**
+	 * <code>false</code> if the handler never blocks and can run on the
+	 * connector thread
+	 */
+	boolean blocking() default true;
+
+	/**
+	 * How instances of the handler are shared between requests
+	 */
+	HandlerLifecycle lifecycle() default HandlerLifecycle.SINGLETON;
+
+}
@@ -0,0 +1,286 @@
+package io.github.ilmich.tempesta.web.annotation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import io.github.ilmich.tempesta.web.handler.HandlerLifecycle;
+import io.github.ilmich.tempesta.web.http.protocol.HttpVerb;
+import io.github.ilmich.tempesta.web.http.router.Route;
+import io.github.ilmich.tempesta.web.http.router.RouteIndex;
+import io.github.ilmich.tempesta.web.http.router.Router;
+
+/**
+ * Generates, for each package containing handlers annotated with
+ * {@link Path}, a {@link RouteIndex} implementation named
+ * <code>TempestaRouteIndex</code>, and lists all of them in
+ * <code>META-INF/services</code>. Route paths are validated at build time.
+ * <p>
+ * The processor is aggregating: the names of the annotated handlers are kept
+ * in {@link #HANDLERS_RESOURCE} of the class output, so that an incremental
+ * build compiling only some handlers still indexes the unchanged ones, read
+ * from their class files.
+ */
+// every build, to drop the handlers no longer annotated
+@SupportedAnnotationTypes("*")
+public class RouteProcessor extends AbstractProcessor {
+
+	public static final String INDEX_CLASS = "TempestaRouteIndex";
+
+	public static final String HANDLERS_RESOURCE = "META-INF/tempesta/handlers";
+
+	private static final String HANDLER_CLASS = "io.github.ilmich.tempesta.web.http.HttpRequestHandler";
+
+	/**
+	 * Annotated handlers by package
+	 */
+	private final Map<String, List<TypeElement>> handlers = new LinkedHashMap<String, List<TypeElement>>();
+
+	private final Set<String> indexes = new TreeSet<String>();
+
+	/**
+	 * Names of the handlers indexed, written for the next build
+	 */
+	private final Set<String> names = new LinkedHashSet<String>();
+
+	/**
+	 * Names of the handlers indexed by the previous build, <code>null</code>
+	 * before the first round
+	 */
+	private Set<String> previous = null;
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			writeServices();
+			return false;
+		}
+		handlers.clear();
+		for (Element element : roundEnv.getElementsAnnotatedWith(Path.class)) {
+			if (isValid(element)) {
+				addHandler((TypeElement) element);
+			}
+		}
+		if (previous == null) {
+			// handlers not compiled by this build, unless removed or no longer annotated
+			previous = readHandlers();
+			Elements elements = processingEnv.getElementUtils();
+			for (String name : previous) {
+				TypeElement type = elements.getTypeElement(name);
+				if (type != null && !names.contains(name) && type.getAnnotation(Path.class) != null
+						&& isValid(type)) {
+					addHandler(type);
+				}
+			}
+		}
+		for (Map.Entry<String, List<TypeElement>> entry : handlers.entrySet()) {
+			writeIndex(entry.getKey(), entry.getValue());
+		}
+		return false; // other processors may need the annotations
+	}
+
+	private void addHandler(TypeElement type) {
+		String pkg = getPackage(type);
+		List<TypeElement> list = handlers.get(pkg);
+		if (list == null) {
+			list = new ArrayList<TypeElement>();
+			handlers.put(pkg, list);
+		}
+		list.add(type);
+		names.add(type.getQualifiedName().toString());
+	}
+
+	private boolean isValid(Element element) {
+		if (element.getKind() != ElementKind.CLASS) {
+			return error(element, "@Path is only allowed on classes");
+		}
+		TypeElement type = (TypeElement) element;
+		if (!type.getModifiers().contains(Modifier.PUBLIC) || type.getModifiers().contains(Modifier.ABSTRACT)) {
+			return error(element, "@Path handler must be a public concrete class");
+		}
+		if (type.getEnclosingElement().getKind() != ElementKind.PACKAGE
+				&& !type.getModifiers().contains(Modifier.STATIC)) {
+			return error(element, "@Path handler must be a top level or static nested class");
+		}
+		TypeElement handler = processingEnv.getElementUtils().getTypeElement(HANDLER_CLASS);
+		if (!processingEnv.getTypeUtils().isAssignable(type.asType(), handler.asType())) {
+			return error(element, "@Path handler must extend " + HANDLER_CLASS);
+		}
+		boolean hasConstructor = false;
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+				hasConstructor = true;
+			}
+		}
+		if (!hasConstructor) {
+			return error(element, "@Path handler must have a public no-argument constructor");
+		}
+		for (String path : type.getAnnotation(Path.class).value()) {
+			try {
+				new Router().add(new Route(null, path, null, null));
+			} catch (IllegalArgumentException e) {
+				// PatternSyntaxException included
+				return error(element, "Invalid @Path \"" + path + "\": " + e.getMessage());
+			}
+		}
+		return true;
+	}
+
+	private boolean error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+		return false;
+	}
+
+	private String getPackage(TypeElement type) {
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+		return pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+	}
+
+	private void writeIndex(String pkg, List<TypeElement> types) {
+		String name = pkg.isEmpty() ? INDEX_CLASS : pkg + "." + INDEX_CLASS;
+		if (!indexes.add(name)) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Handlers of package " + pkg + " must be compiled together");
+			return;
+		}
+		StringBuilder src = new StringBuilder();
+		if (!pkg.isEmpty()) {
+			src.append("package ").append(pkg).append(";\n\n");
+		}
+		src.append("/** Generated by ").append(RouteProcessor.class.getName()).append(" */\n");
+		src.append("public final class ").append(INDEX_CLASS).append(" implements ")
+				.append(RouteIndex.class.getName()).append(" {\n\n");
+		src.append("\tpublic String getPackage() {\n");
+		src.append("\t\treturn \"").append(pkg).append("\";\n");
+		src.append("\t}\n\n");
+		src.append("\tpublic void addRoutes(io.github.ilmich.tempesta.web.http.router.VirtualHost host) {\n");
+		int i = 0;
+		for (TypeElement type : types) {
+			Path path = type.getAnnotation(Path.class);
+			String var = "h" + i++;
+			String cls = type.getQualifiedName().toString();
+			src.append("\t\t").append(cls).append(" ").append(var).append(" = new ").append(cls).append("();\n");
+			if (!path.blocking()) {
+				src.append("\t\t").append(var).append(".setBlocking(false);\n");
+			}
+			if (path.lifecycle() != HandlerLifecycle.SINGLETON) {
+				src.append("\t\t").append(var).append(".setLifecycle(").append(HandlerLifecycle.class.getName())
+						.append(".").append(path.lifecycle().name()).append(");\n");
+			}
+			for (String value : path.value()) {
+				String literal = toLiteral(value);
+				if (path.verbs().length == 0) {
+					src.append("\t\thost.addRoute(").append(literal).append(", ").append(var).append(");\n");
+				}
+				for (HttpVerb verb : path.verbs()) {
+					src.append("\t\thost.addRoute(").append(HttpVerb.class.getName()).append(".").append(verb.name())
+							.append(", ").append(literal).append(", ").append(var).append(");\n");
+				}
+			}
+		}
+		src.append("\t}\n\n}\n");
+		try {
+			Writer writer = processingEnv.getFiler().createSourceFile(name, types.toArray(new Element[types.size()]))
+					.openWriter();
+			try {
+				writer.write(src.toString());
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write " + name + ": " + e);
+		}
+	}
+
+	private void writeServices() {
+		if (indexes.isEmpty() && (previous == null || previous.isEmpty())) {
+			return;
+		}
+		writeResource("META-INF/services/" + RouteIndex.class.getName(), indexes);
+		writeResource(HANDLERS_RESOURCE, names);
+	}
+
+	private void writeResource(String resource, Set<String> lines) {
+		try {
+			FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", resource);
+			Writer writer = file.openWriter();
+			try {
+				for (String line : lines) {
+					writer.write(line);
+					writer.write("\n");
+				}
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write " + resource + ": " + e);
+		}
+	}
+
+	/**
+	 * Returns the names of the handlers indexed by the previous build, none
+	 * after a clean build
+	 */
+	private Set<String> readHandlers() {
+		Set<String> result = new LinkedHashSet<String>();
+		try {
+			FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+					HANDLERS_RESOURCE);
+			BufferedReader reader = new BufferedReader(file.openReader(true));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (!line.isEmpty()) {
+						result.add(line);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			// no previous build
+		}
+		return result;
+	}
+
+	private static String toLiteral(String value) {
+		StringBuilder literal = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				literal.append('\\');
+			}
+			literal.append(c);
+		}
+		return literal.append('"').toString();
+	}
+
+}
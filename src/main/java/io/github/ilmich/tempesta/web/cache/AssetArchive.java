@@ -0,0 +1,231 @@
+package io.github.ilmich.tempesta.web.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import io.github.ilmich.tempesta.util.Closeables;
+import io.github.ilmich.tempesta.util.DateUtil;
+import io.github.ilmich.tempesta.util.HttpUtil;
+
+/**
+ * A read-only archive of static assets, built by
+ * {@link io.github.ilmich.tempesta.web.handler.AssetPacker} and memory mapped
+ * as a whole, so that serving an asset takes a binary search and a slice of the
+ * mapping: no open, stat or read per request, and a single inode for the whole
+ * static tree.
+ * <p>
+ * Layout (big endian): the magic number, the version, the number of assets and
+ * the length of the index, then the index sorted by path, then the data. Each
+ * index entry holds the path, the content type, the modification time, a CRC32
+ * of the content and its variants: the content coding ("" for identity), the
+ * offset relative to the data and the length. Variants are stored by
+ * preference, identity last.
+ */
+public class AssetArchive {
+
+	public static final int MAGIC = 0x5450414B; // "TPAK"
+
+	public static final int VERSION = 1;
+
+	private static final Charset ASCII = Charset.forName("ASCII");
+
+	private final File file;
+
+	private final String[] paths;
+
+	private final Asset[] assets;
+
+	private AssetArchive(File file, String[] paths, Asset[] assets) {
+		this.file = file;
+		this.paths = paths;
+		this.assets = assets;
+	}
+
+	/**
+	 * Map the given archive and read its index
+	 */
+	public static AssetArchive open(File file) throws IOException {
+		MappedByteBuffer buffer;
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to be mapped");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			Closeables.closeQuietly(in);
+		}
+
+		if (buffer.remaining() < 16 || buffer.getInt(0) != MAGIC) {
+			throw new IOException(file + " is not an asset archive");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException(file + " has unsupported version " + buffer.getInt(4));
+		}
+		int count = buffer.getInt(8);
+		int indexLength = buffer.getInt(12);
+		int dataStart = 16 + indexLength;
+		byte[] index = new byte[indexLength];
+		buffer.position(16);
+		buffer.get(index);
+
+		String[] paths = new String[count];
+		Asset[] assets = new Asset[count];
+		DataInputStream din = new DataInputStream(new ByteArrayInputStream(index));
+		for (int i = 0; i < count; i++) {
+			String path = din.readUTF();
+			String contentType = din.readUTF();
+			long lastModified = din.readLong();
+			int crc = din.readInt();
+			Variant[] variants = new Variant[din.readByte()];
+			for (int v = 0; v < variants.length; v++) {
+				String encoding = din.readUTF();
+				long offset = din.readLong();
+				int length = din.readInt();
+				ByteBuffer content = buffer.duplicate();
+				content.position((int) (dataStart + offset));
+				content.limit((int) (dataStart + offset + length));
+				variants[v] = new Variant(encoding.isEmpty() ? null : encoding, content.slice().asReadOnlyBuffer());
+			}
+			paths[i] = path;
+			assets[i] = new Asset(path, contentType, lastModified, crc, variants);
+		}
+		return new AssetArchive(file, paths, assets);
+	}
+
+	/**
+	 * Returns the asset at the given path (relative, e.g. "static/a.css"), or
+	 * <code>null</code>
+	 */
+	public Asset find(String path) {
+		int i = Arrays.binarySearch(paths, path);
+		return i >= 0 ? assets[i] : null;
+	}
+
+	public int size() {
+		return assets.length;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * An archived asset and its variants
+	 */
+	public static class Asset {
+
+		private final String path;
+
+		private final long lastModified;
+
+		private final Variant[] variants;
+
+		private Asset(String path, String contentType, long lastModified, int crc, Variant[] variants) {
+			this.path = path;
+			this.lastModified = lastModified;
+			this.variants = variants;
+			String etag = Integer.toHexString(crc) + "-" + Long.toHexString(variants[variants.length - 1].length);
+			for (Variant variant : variants) {
+				variant.etag = "\"" + etag + (variant.encoding != null ? "-" + variant.encoding : "") + "\"";
+				StringBuilder headers = new StringBuilder();
+				headers.append("Content-Type: ").append(contentType).append("\r\n");
+				headers.append("Last-Modified: ").append(DateUtil.parseToRFC1123(lastModified)).append("\r\n");
+				headers.append("Cache-Control: public\r\n");
+				headers.append("Etag: ").append(variant.etag).append("\r\n");
+				if (variant.encoding != null) {
+					headers.append("Content-Encoding: ").append(variant.encoding).append("\r\n");
+				}
+				if (variants.length > 1) {
+					headers.append("Vary: Accept-Encoding\r\n");
+				}
+				variant.headers = headers.toString().getBytes(ASCII);
+			}
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * Returns the preferred variant accepted by the given Accept-Encoding
+		 * header, identity if none is
+		 */
+		public Variant select(String acceptEncoding) {
+			if (acceptEncoding != null) {
+				for (int i = 0; i < variants.length - 1; i++) {
+					if (HttpUtil.acceptsEncoding(acceptEncoding, variants[i].encoding)) {
+						return variants[i];
+					}
+				}
+			}
+			return variants[variants.length - 1];
+		}
+	}
+
+	/**
+	 * An encoding of an asset, with its entity headers already encoded
+	 */
+	public static class Variant {
+
+		private final String encoding;
+
+		private final ByteBuffer content;
+
+		private final int length;
+
+		private String etag;
+
+		private byte[] headers;
+
+		private Variant(String encoding, ByteBuffer content) {
+			this.encoding = encoding;
+			this.content = content;
+			this.length = content.remaining();
+		}
+
+		/**
+		 * Returns the content coding, <code>null</code> for identity
+		 */
+		public String getEncoding() {
+			return encoding;
+		}
+
+		public String getEtag() {
+			return etag;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * Returns a new buffer over the content, to be written to a single
+		 * response
+		 */
+		public ByteBuffer getContent() {
+			return content.duplicate();
+		}
+
+		/**
+		 * Returns the entity headers, encoded. Must not be modified.
+		 */
+		public byte[] getHeaders() {
+			return headers;
+		}
+	}
+
+}
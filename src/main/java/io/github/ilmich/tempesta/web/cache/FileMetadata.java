@@ -0,0 +1,169 @@
+package io.github.ilmich.tempesta.web.cache;
+
+import java.io.File;
+
+/**
+ * The attributes of a static file needed to serve it, read once and cached by
+ * {@link FileMetadataCache}.
+ */
+public class FileMetadata {
+
+	/**
+	 * The file does not exist, or cannot be served
+	 */
+	public static final int MISSING = 0;
+
+	public static final int FILE = 1;
+
+	/**
+	 * The path exists but is not a regular file, e.g. a directory
+	 */
+	public static final int NOT_A_FILE = 2;
+
+	/**
+	 * The path must not be served, e.g. it is outside the document root
+	 */
+	public static final int FORBIDDEN = 3;
+
+	private final File file;
+
+	private final int type;
+
+	private final long length;
+
+	private final long lastModified;
+
+	private final String contentType;
+
+	/**
+	 * The content coding of the file (e.g. "gzip" for a precompressed variant),
+	 * <code>null</code> for none
+	 */
+	private final String encoding;
+
+	private final String etag;
+
+	/**
+	 * When the attributes were read, in ms
+	 */
+	private final long readAt;
+
+	volatile boolean referenced = false;
+
+	/**
+	 * Number of requests that missed the content caches, approximate
+	 */
+	private volatile int hits = 0;
+
+	public FileMetadata(File file, int type, long length, long lastModified, String contentType) {
+		this(file, type, length, lastModified, contentType, null);
+	}
+
+	/**
+	 * @param encoding the content coding of the file, which then gets its own
+	 *                 entity tag
+	 */
+	public FileMetadata(File file, int type, long length, long lastModified, String contentType, String encoding) {
+		this.file = file;
+		this.type = type;
+		this.length = length;
+		this.lastModified = lastModified;
+		this.contentType = contentType;
+		this.encoding = encoding;
+		this.etag = type == FILE ? "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified)
+				+ (encoding != null ? "-" + encoding : "") + "\"" : null;
+		this.readAt = System.currentTimeMillis();
+	}
+
+	public static FileMetadata missing(File file) {
+		return new FileMetadata(file, MISSING, 0, 0, null);
+	}
+
+	public static FileMetadata notAFile(File file) {
+		return new FileMetadata(file, NOT_A_FILE, 0, 0, null);
+	}
+
+	public static FileMetadata forbidden(File file) {
+		return new FileMetadata(file, FORBIDDEN, 0, 0, null);
+	}
+
+	/**
+	 * Read again the attributes of the file.
+	 * 
+	 * @return this instance if they did not change, the new attributes, or
+	 *         <code>null</code> if the file changed type and must be looked up
+	 *         again
+	 */
+	public FileMetadata refresh() {
+		switch (type) {
+		case FORBIDDEN:
+			return this;
+		case FILE:
+			if (!file.isFile()) {
+				return null;
+			}
+			long currentLength = file.length();
+			long currentLastModified = file.lastModified();
+			if (currentLength != length || currentLastModified != lastModified) {
+				return new FileMetadata(file, FILE, currentLength, currentLastModified, contentType, encoding);
+			}
+			return this;
+		default:
+			return file.exists() && !file.isFile() ? this : null;
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public boolean exists() {
+		return type != MISSING;
+	}
+
+	public boolean isFile() {
+		return type == FILE;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public String getEncoding() {
+		return encoding;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Returns an entity tag derived from the size and the modification time,
+	 * strong enough to validate byte ranges ("If-Range")
+	 */
+	public String getEtag() {
+		return etag;
+	}
+
+	/**
+	 * Count a request for the file not served from a content cache
+	 * 
+	 * @return the number of such requests so far, approximate
+	 */
+	public int hit() {
+		return ++hits;
+	}
+
+	public long getReadAt() {
+		return readAt;
+	}
+
+}
@@ -0,0 +1,204 @@
+package io.github.ilmich.tempesta.web.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.ilmich.tempesta.util.Log;
+import io.github.ilmich.tempesta.util.MXBeanUtil;
+
+/**
+ * A cache of static file attributes, so that serving a file, or answering 404
+ * to a missing one, makes no filesystem calls on the request path.
+ * <p>
+ * Entries of existing paths are kept up to date by a background task reading
+ * them again every refresh interval. Entries of missing paths (negative
+ * entries) expire after a time to live instead, so that probing random paths
+ * cannot fill the cache with stale entries for long. The number of entries is
+ * capped, eviction uses the CLOCK algorithm as {@link StaticContentCache}.
+ */
+public class FileMetadataCache implements FileMetadataCacheMXBean {
+
+	private static final String TAG = "FileMetadataCache";
+
+	private final String name;
+
+	private final int maxEntries;
+
+	private final long negativeTtl;
+
+	private final ConcurrentHashMap<String, FileMetadata> entries = new ConcurrentHashMap<String, FileMetadata>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong negativeHits = new AtomicLong();
+
+	private final ScheduledExecutorService refresher;
+
+	/**
+	 * @param name            the name of the cache, used for JMX and the
+	 *                        refresh thread
+	 * @param maxEntries      the maximum number of entries
+	 * @param negativeTtl     the time a missing path is remembered, in ms
+	 * @param refreshInterval the time between two background refreshes of the
+	 *                        entries, in ms
+	 */
+	public FileMetadataCache(final String name, int maxEntries, long negativeTtl, long refreshInterval) {
+		this.name = name;
+		this.maxEntries = maxEntries;
+		this.negativeTtl = negativeTtl;
+		refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "tempesta-" + name + "-refresh");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		refresher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					refresh();
+				} catch (RuntimeException e) {
+					Log.warn(TAG, "Metadata refresh failed: " + e.getMessage());
+				}
+			}
+		}, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+		MXBeanUtil.registerMXBean(this, "FileMetadataCache", name);
+	}
+
+	/**
+	 * Returns the attributes cached for the given key, or <code>null</code> if
+	 * there are none or they expired
+	 */
+	public FileMetadata get(String key) {
+		FileMetadata metadata = entries.get(key);
+		if (metadata == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		if (!metadata.exists()) {
+			if (System.currentTimeMillis() - metadata.getReadAt() >= negativeTtl) {
+				entries.remove(key, metadata);
+				misses.incrementAndGet();
+				return null;
+			}
+			negativeHits.incrementAndGet();
+		}
+		metadata.referenced = true;
+		hits.incrementAndGet();
+		return metadata;
+	}
+
+	/**
+	 * Cache the given attributes
+	 * 
+	 * @return the given attributes
+	 */
+	public FileMetadata put(String key, FileMetadata metadata) {
+		if (entries.size() >= maxEntries) {
+			evict();
+		}
+		entries.put(key, metadata);
+		return metadata;
+	}
+
+	public void invalidate(String key) {
+		entries.remove(key);
+	}
+
+	@Override
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Stop the background refresh
+	 */
+	public void shutdown() {
+		refresher.shutdownNow();
+		MXBeanUtil.unregisterMXBean("FileMetadataCache", name);
+	}
+
+	/**
+	 * Read again the attributes of every entry, dropping expired negative
+	 * entries
+	 */
+	private void refresh() {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, FileMetadata> e : entries.entrySet()) {
+			FileMetadata metadata = e.getValue();
+			if (!metadata.exists()) {
+				if (now - metadata.getReadAt() >= negativeTtl) {
+					entries.remove(e.getKey(), metadata);
+				}
+				continue;
+			}
+			FileMetadata current = metadata.refresh();
+			if (current == null) {
+				entries.remove(e.getKey(), metadata);
+			} else if (current != metadata) {
+				entries.replace(e.getKey(), metadata, current);
+			}
+		}
+	}
+
+	/**
+	 * Sweep the entries, evicting the ones not hit since the last sweep until
+	 * there is room for a new one
+	 */
+	private synchronized void evict() {
+		for (int pass = 0; pass < 2 && entries.size() >= maxEntries; pass++) {
+			Iterator<Map.Entry<String, FileMetadata>> it = entries.entrySet().iterator();
+			while (it.hasNext() && entries.size() >= maxEntries) {
+				FileMetadata metadata = it.next().getValue();
+				if (metadata.referenced && metadata.exists()) {
+					metadata.referenced = false;
+				} else {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	// implements FileMetadataCacheMXBean
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getEntryCount() {
+		return entries.size();
+	}
+
+	@Override
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	@Override
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	@Override
+	public long getNegativeHitCount() {
+		return negativeHits.get();
+	}
+
+	@Override
+	public long getMissCount() {
+		return misses.get();
+	}
+
+}
@@ -0,0 +1,19 @@
+package io.github.ilmich.tempesta.web.cache;
+
+public interface FileMetadataCacheMXBean {
+
+	String getName();
+
+	int getEntryCount();
+
+	int getMaxEntries();
+
+	long getHitCount();
+
+	long getNegativeHitCount();
+
+	long getMissCount();
+
+	void clear();
+
+}
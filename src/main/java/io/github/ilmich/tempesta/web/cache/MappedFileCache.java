@@ -0,0 +1,378 @@
+package io.github.ilmich.tempesta.web.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.ilmich.tempesta.io.BodySegment;
+import io.github.ilmich.tempesta.util.Closeables;
+import io.github.ilmich.tempesta.util.Log;
+import io.github.ilmich.tempesta.util.MXBeanUtil;
+
+/**
+ * A cache of memory mapped static files, bounded by the total size of the
+ * mappings.
+ * <p>
+ * Files too large for the {@link StaticContentCache} are mapped once with
+ * {@link FileChannel#map} and read-only slices of the mapping are handed to the
+ * write path, so that serving them neither reopens the file nor depends on
+ * <code>transferTo</code> being zero-copy. Mappings are reference counted: the
+ * cache holds one reference and every response body another, a mapping is
+ * unmapped when evicted (or its file changed) and no response uses it anymore.
+ * <p>
+ * Files should be replaced atomically (e.g. renamed over): a mapped file
+ * truncated in place fails the responses being sent.
+ */
+public class MappedFileCache implements MappedFileCacheMXBean {
+
+	private static final String TAG = "MappedFileCache";
+
+	private final String name;
+
+	private final long maxSize;
+
+	private final long minFileSize;
+
+	private final ConcurrentHashMap<String, MappedFile> entries = new ConcurrentHashMap<String, MappedFile>();
+
+	private final AtomicLong size = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param name        the name of the cache, used for JMX
+	 * @param maxSize     the maximum total size of the mapped files, in bytes
+	 * @param minFileSize the minimum size of a mapped file, in bytes
+	 */
+	public MappedFileCache(String name, long maxSize, long minFileSize) {
+		this.name = name;
+		this.maxSize = maxSize;
+		this.minFileSize = minFileSize;
+		MXBeanUtil.registerMXBean(this, "MappedFileCache", name);
+	}
+
+	/**
+	 * Returns the mapping of the given key with a reference the caller must
+	 * release, or <code>null</code> if there is none or the file changed since
+	 * it was mapped
+	 * 
+	 * @param metadata the current attributes of the file
+	 */
+	public MappedFile get(String key, FileMetadata metadata) {
+		MappedFile mapped = entries.get(key);
+		if (mapped == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		if (metadata.getLastModified() != mapped.lastModified || metadata.getLength() != mapped.length) {
+			remove(key, mapped);
+			misses.incrementAndGet();
+			return null;
+		}
+		if (!mapped.retain()) { // evicted meanwhile
+			misses.incrementAndGet();
+			return null;
+		}
+		mapped.referenced = true;
+		hits.incrementAndGet();
+		return mapped;
+	}
+
+	/**
+	 * Returns <code>true</code> if the file can be mapped
+	 */
+	public boolean accepts(FileMetadata metadata) {
+		long length = metadata.getLength();
+		return metadata.isFile() && length >= minFileSize && length <= maxSize && length <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Map the given file
+	 * 
+	 * @return the new mapping with a reference the caller must release, or
+	 *         <code>null</code> if the file cannot be mapped, changed or is too
+	 *         large
+	 */
+	public MappedFile put(String key, FileMetadata metadata) {
+		if (!accepts(metadata)) {
+			return null;
+		}
+		File file = metadata.getFile();
+		MappedByteBuffer buffer = null;
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			// the mapping stays valid once the channel is closed
+			buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, metadata.getLength());
+		} catch (IOException e) {
+			Log.warn(TAG, "Cannot map " + file + ": " + e.getMessage());
+			return null;
+		} finally {
+			Closeables.closeQuietly(in);
+		}
+		if (file.lastModified() != metadata.getLastModified()) {
+			unmap(buffer); // file changed while mapping
+			return null;
+		}
+
+		MappedFile mapped = new MappedFile(metadata, buffer);
+		mapped.retain();
+		MappedFile previous = entries.put(key, mapped);
+		size.addAndGet(mapped.length);
+		if (previous != null) {
+			size.addAndGet(-previous.length);
+			previous.release();
+		}
+		if (size.get() > maxSize) {
+			evict();
+		}
+		return mapped;
+	}
+
+	public void invalidate(String key) {
+		MappedFile mapped = entries.get(key);
+		if (mapped != null) {
+			remove(key, mapped);
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (String key : entries.keySet()) {
+			invalidate(key);
+		}
+	}
+
+	private void remove(String key, MappedFile mapped) {
+		if (entries.remove(key, mapped)) {
+			size.addAndGet(-mapped.length);
+			mapped.release();
+		}
+	}
+
+	/**
+	 * Sweep the entries, evicting the ones not hit since the last sweep until
+	 * the cache fits again
+	 */
+	private synchronized void evict() {
+		for (int pass = 0; pass < 2 && size.get() > maxSize; pass++) {
+			Iterator<java.util.Map.Entry<String, MappedFile>> it = entries.entrySet().iterator();
+			while (it.hasNext() && size.get() > maxSize) {
+				java.util.Map.Entry<String, MappedFile> e = it.next();
+				MappedFile mapped = e.getValue();
+				if (mapped.referenced) {
+					mapped.referenced = false;
+				} else {
+					remove(e.getKey(), mapped);
+					evictions.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	// implements MappedFileCacheMXBean
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getEntryCount() {
+		return entries.size();
+	}
+
+	@Override
+	public long getSize() {
+		return size.get();
+	}
+
+	@Override
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	@Override
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	@Override
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * A mapped file, unmapped when the last reference is released
+	 */
+	public static class MappedFile {
+
+		private final long lastModified;
+
+		private final long length;
+
+		private final MappedByteBuffer buffer;
+
+		private final AtomicInteger references = new AtomicInteger(1);
+
+		private volatile boolean referenced = false;
+
+		private MappedFile(FileMetadata metadata, MappedByteBuffer buffer) {
+			this.lastModified = metadata.getLastModified();
+			this.length = metadata.getLength();
+			this.buffer = buffer;
+		}
+
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * Take a reference to the mapping
+		 * 
+		 * @return <code>false</code> if the mapping was already released
+		 */
+		public boolean retain() {
+			for (;;) {
+				int count = references.get();
+				if (count <= 0) {
+					return false;
+				}
+				if (references.compareAndSet(count, count + 1)) {
+					return true;
+				}
+			}
+		}
+
+		public void release() {
+			if (references.decrementAndGet() == 0) {
+				unmap(buffer);
+			}
+		}
+
+		/**
+		 * Returns a body segment sending a region of the file, holding its own
+		 * reference to the mapping until released. The caller must hold a
+		 * reference.
+		 */
+		public BodySegment newSegment(long position, long length) {
+			references.incrementAndGet();
+			ByteBuffer slice = buffer.duplicate();
+			slice.position((int) position);
+			slice.limit((int) (position + length));
+			return new MappedSegment(this, slice);
+		}
+	}
+
+	private static class MappedSegment implements BodySegment {
+
+		private final MappedFile mapped;
+
+		private final ByteBuffer slice;
+
+		private final long length;
+
+		private boolean released = false;
+
+		MappedSegment(MappedFile mapped, ByteBuffer slice) {
+			this.mapped = mapped;
+			this.slice = slice;
+			this.length = slice.remaining();
+		}
+
+		@Override
+		public long writeTo(WritableByteChannel channel) throws IOException {
+			return channel.write(slice);
+		}
+
+		@Override
+		public boolean hasRemaining() {
+			return slice.hasRemaining();
+		}
+
+		@Override
+		public long length() {
+			return length;
+		}
+
+		@Override
+		public void release() {
+			if (!released) {
+				released = true;
+				mapped.release();
+			}
+		}
+	}
+
+	// unmapping is not part of the public API: use sun.misc.Unsafe.invokeCleaner
+	// on Java 9+, the buffer cleaner on Java 8, or leave it to the GC
+
+	private static final Object UNSAFE;
+
+	private static final Method INVOKE_CLEANER;
+
+	private static final Method CLEANER;
+
+	private static final Method CLEAN;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		Method cleaner = null;
+		Method clean = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+		} catch (Exception e) {
+			invokeCleaner = null;
+			try {
+				cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+				clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			} catch (Exception ex) {
+				Log.debug(TAG, "Mapped files can't be unmapped explicitly: " + ex.getMessage());
+			}
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+		CLEANER = cleaner;
+		CLEAN = clean;
+	}
+
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			if (INVOKE_CLEANER != null) {
+				INVOKE_CLEANER.invoke(UNSAFE, buffer);
+			} else if (CLEANER != null) {
+				Object cleaner = CLEANER.invoke(buffer);
+				if (cleaner != null) {
+					CLEAN.invoke(cleaner);
+				}
+			}
+		} catch (Exception e) {
+			Log.debug(TAG, "Cannot unmap buffer: " + e.getMessage());
+		}
+	}
+
+}
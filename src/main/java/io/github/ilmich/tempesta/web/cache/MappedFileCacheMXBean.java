@@ -0,0 +1,21 @@
+package io.github.ilmich.tempesta.web.cache;
+
+public interface MappedFileCacheMXBean {
+
+	String getName();
+
+	int getEntryCount();
+
+	long getSize();
+
+	long getMaxSize();
+
+	long getHitCount();
+
+	long getMissCount();
+
+	long getEvictionCount();
+
+	void clear();
+
+}
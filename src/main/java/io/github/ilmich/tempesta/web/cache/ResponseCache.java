@@ -0,0 +1,525 @@
+package io.github.ilmich.tempesta.web.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.ilmich.tempesta.io.ResponseListener;
+import io.github.ilmich.tempesta.util.HttpUtil;
+import io.github.ilmich.tempesta.util.Log;
+import io.github.ilmich.tempesta.util.MXBeanUtil;
+import io.github.ilmich.tempesta.web.http.HttpRequest;
+import io.github.ilmich.tempesta.web.http.HttpResponse;
+import io.github.ilmich.tempesta.web.http.HttpServerDescriptor;
+import io.github.ilmich.tempesta.web.http.RenderedResponse;
+import io.github.ilmich.tempesta.web.http.Response;
+import io.github.ilmich.tempesta.web.http.ResponseCompressor;
+import io.github.ilmich.tempesta.web.http.protocol.HttpVerb;
+
+/**
+ * A short lived cache (micro-cache) of the responses of a route, holding them
+ * fully encoded so that a hit is written as is from the connector thread.
+ * <p>
+ * Responses are keyed by method, path, query parameters (sorted), the content
+ * coding the response is compressed with and the values of the configured
+ * request headers the response varies on. Only GET and HEAD responses are
+ * cached, with status 200, 203, 301, 404 or 410, no cookie, no
+ * "Cache-Control: no-store, no-cache or private" and a body in memory.
+ * <p>
+ * A response is fresh for the time to live, then served stale for up to the
+ * stale-while-revalidate time while a single request refreshes it in the
+ * background. Concurrent misses on the same key are coalesced: the first one
+ * is processed, the others wait for its response (single-flight).
+ * <p>
+ * Responses are kept on the heap, or in a {@link SlabStore} for large caches:
+ * hits are then written to the socket straight from off-heap memory.
+ */
+public class ResponseCache implements ResponseCacheMXBean {
+
+	private static final String TAG = "ResponseCache";
+
+	private final String name;
+
+	private final long ttl;
+
+	private final long staleWhileRevalidate;
+
+	private final int maxEntries;
+
+	/**
+	 * The request headers responses vary on, besides Accept-Encoding
+	 */
+	private final String[] varyHeaders;
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * The off-heap store of the responses, <code>null</code> to keep them in
+	 * {@link #entries}
+	 */
+	private final SlabStore store;
+
+	/**
+	 * The keys being processed, with the requests waiting for them
+	 */
+	private final ConcurrentHashMap<String, Fill> fills = new ConcurrentHashMap<String, Fill>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong staleHits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong coalesced = new AtomicLong();
+
+	private final AtomicLong revalidations = new AtomicLong();
+
+	/**
+	 * @param name                 the name of the cache, used for JMX
+	 * @param ttl                  the time a response is fresh, in ms
+	 * @param staleWhileRevalidate the time a response is served once expired
+	 *                             while being refreshed, in ms
+	 * @param varyHeaders          the request headers the responses vary on,
+	 *                             e.g. "Accept-Language"
+	 */
+	public ResponseCache(String name, long ttl, long staleWhileRevalidate, String... varyHeaders) {
+		this(name, ttl, staleWhileRevalidate, null, varyHeaders);
+	}
+
+	/**
+	 * Create a cache keeping the responses in the given store, which may be
+	 * shared by several caches
+	 */
+	public ResponseCache(String name, long ttl, long staleWhileRevalidate, SlabStore store, String... varyHeaders) {
+		this.name = name;
+		this.ttl = ttl;
+		this.staleWhileRevalidate = staleWhileRevalidate;
+		this.maxEntries = store != null ? store.getMaxEntries() : HttpServerDescriptor.RESPONSE_CACHE_SIZE;
+		this.varyHeaders = varyHeaders;
+		this.store = store;
+		MXBeanUtil.registerMXBean(this, "ResponseCache", name);
+	}
+
+	/**
+	 * Returns the key of the response of the given request, or
+	 * <code>null</code> if it cannot be cached
+	 */
+	public String getKey(HttpRequest request) {
+		HttpVerb method = request.getMethod();
+		if (method != HttpVerb.GET && method != HttpVerb.HEAD) {
+			return null;
+		}
+		StringBuilder key = new StringBuilder(64).append(name).append('\n').append(method).append(' ')
+				.append(request.getRequestedPath());
+		Map<String, Collection<String>> parameters = request.getParameters();
+		if (!parameters.isEmpty()) {
+			String[] names = parameters.keySet().toArray(new String[parameters.size()]);
+			Arrays.sort(names);
+			for (String name : names) {
+				for (String value : parameters.get(name)) {
+					key.append('\0').append(name).append('\1').append(value);
+				}
+			}
+		}
+		key.append('\n').append(getEncoding(request.getHeader("Accept-Encoding")));
+		for (String header : varyHeaders) {
+			String value = request.getHeader(header);
+			key.append('\n').append(value == null ? "" : value.trim());
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the content coding a response would be compressed with, as
+	 * {@link HttpResponse} chooses it
+	 */
+	private static String getEncoding(String acceptEncoding) {
+		if (!HttpServerDescriptor.RESPONSE_COMPRESSION || acceptEncoding == null) {
+			return "";
+		} else if (HttpUtil.acceptsEncoding(acceptEncoding, ResponseCompressor.GZIP)) {
+			return ResponseCompressor.GZIP;
+		} else if (HttpUtil.acceptsEncoding(acceptEncoding, ResponseCompressor.DEFLATE)) {
+			return ResponseCompressor.DEFLATE;
+		}
+		return "";
+	}
+
+	/**
+	 * Returns the response cached for the given key, fresh or still servable
+	 * stale, or <code>null</code>
+	 */
+	public Entry get(String key) {
+		if (store != null) {
+			return getStored(key);
+		}
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		long age = System.currentTimeMillis() - entry.storedAt;
+		if (age >= ttl + staleWhileRevalidate) {
+			entries.remove(key, entry);
+			misses.incrementAndGet();
+			return null;
+		}
+		entry.stale = age >= ttl;
+		entry.referenced = true;
+		(entry.stale ? staleHits : hits).incrementAndGet();
+		return entry;
+	}
+
+	/**
+	 * Returns the response stored off-heap for the given key, pinned until the
+	 * response built from it is released
+	 */
+	private Entry getStored(String key) {
+		SlabStore.Slot slot = store.get(key);
+		if (slot == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		long age = System.currentTimeMillis() - slot.getTimestamp();
+		if (age >= ttl + staleWhileRevalidate) {
+			slot.release();
+			store.remove(key);
+			misses.incrementAndGet();
+			return null;
+		}
+		Entry entry = new Entry(slot.getData(), slot.getTimestamp(), slot);
+		entry.stale = age >= ttl;
+		(entry.stale ? staleHits : hits).incrementAndGet();
+		return entry;
+	}
+
+	/**
+	 * Wait for the response of the request being processed with the given key,
+	 * if any, otherwise the caller becomes the one processing it and must call
+	 * {@link #complete(String, HttpResponse)} or {@link #abandon(String)}.
+	 * 
+	 * @return <code>true</code> if the listener will be given the response
+	 */
+	public boolean join(String key, HttpRequest request, ResponseListener listener) {
+		Fill fill = new Fill();
+		while (true) {
+			Fill current = fills.putIfAbsent(key, fill);
+			if (current == null) {
+				return false;
+			}
+			if (current.add(request, listener)) {
+				coalesced.incrementAndGet();
+				return true;
+			}
+			fills.remove(key, current); // completing, retry
+		}
+	}
+
+	/**
+	 * Refresh the stale response of the given key in the background, unless
+	 * the key is already being processed. The task must call
+	 * {@link #complete(String, HttpResponse)} or {@link #abandon(String)}.
+	 * 
+	 * @param executor the executor running the task, <code>null</code> for a
+	 *                 shared one
+	 */
+	public void revalidate(String key, Runnable task, ExecutorService executor) {
+		if (fills.putIfAbsent(key, new Fill()) != null) {
+			return;
+		}
+		revalidations.incrementAndGet();
+		try {
+			(executor != null ? executor : Holder.executor).execute(task);
+		} catch (RejectedExecutionException e) {
+			abandon(key);
+		}
+	}
+
+	/**
+	 * Cache the given prepared response of the given key if it can be, and
+	 * hand it to the requests waiting for it. Otherwise they are processed.
+	 */
+	public void complete(String key, HttpResponse response) {
+		Entry entry = null;
+		if (isCacheable(response)) {
+			byte[] bytes = Entry.encode(response.getHead(true), response.getHead(false), response.getBody());
+			entry = new Entry(ByteBuffer.wrap(bytes), System.currentTimeMillis(), null);
+			if (store != null) {
+				store.put(key, entry.storedAt, bytes);
+			} else {
+				if (entries.size() >= maxEntries) {
+					evict();
+				}
+				entries.put(key, entry);
+			}
+		}
+		Fill fill = fills.remove(key);
+		if (fill != null) {
+			fill.close(entry);
+		}
+	}
+
+	/**
+	 * Give up processing the given key, the requests waiting for it are
+	 * processed
+	 */
+	public void abandon(String key) {
+		Fill fill = fills.remove(key);
+		if (fill != null) {
+			fill.close(null);
+		}
+	}
+
+	public void invalidate(String key) {
+		if (store != null) {
+			store.remove(key);
+		}
+		entries.remove(key);
+	}
+
+	private boolean isCacheable(HttpResponse response) {
+		switch (response.getStatus()) {
+		case SUCCESS_OK:
+		case SUCCESS_NON_AUTHORATIVE_INFORMATION:
+		case REDIRECTION_MOVED_PERMANENTLY:
+		case CLIENT_ERROR_NOT_FOUND:
+		case CLIENT_ERROR_GONE:
+			break;
+		default:
+			return false;
+		}
+		String cacheControl = response.getHeader("Cache-Control");
+		if (cacheControl != null && (cacheControl.contains("no-store") || cacheControl.contains("no-cache")
+				|| cacheControl.contains("private"))) {
+			return false;
+		}
+		if (response.hasCookies() || !response.getBodySegments().isEmpty()) {
+			return false;
+		}
+		return response.getResponseData().limit() <= HttpServerDescriptor.RESPONSE_CACHE_MAX_ENTRY_SIZE;
+	}
+
+	/**
+	 * Sweep the entries, evicting the ones not hit since the last sweep until
+	 * there is room for a new one
+	 */
+	private synchronized void evict() {
+		long now = System.currentTimeMillis();
+		for (int pass = 0; pass < 2 && entries.size() >= maxEntries; pass++) {
+			Iterator<Entry> it = entries.values().iterator();
+			while (it.hasNext() && entries.size() >= maxEntries) {
+				Entry entry = it.next();
+				if (entry.referenced && now - entry.storedAt < ttl + staleWhileRevalidate) {
+					entry.referenced = false;
+				} else {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stop exposing this cache through JMX
+	 */
+	public void shutdown() {
+		MXBeanUtil.unregisterMXBean("ResponseCache", name);
+	}
+
+	// implements ResponseCacheMXBean
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getEntryCount() {
+		return store != null ? store.getEntryCount() : entries.size();
+	}
+
+	@Override
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	@Override
+	public long getTtl() {
+		return ttl;
+	}
+
+	@Override
+	public long getStaleWhileRevalidate() {
+		return staleWhileRevalidate;
+	}
+
+	@Override
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	@Override
+	public long getStaleHitCount() {
+		return staleHits.get();
+	}
+
+	@Override
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	@Override
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	@Override
+	public long getRevalidationCount() {
+		return revalidations.get();
+	}
+
+	@Override
+	public void clear() {
+		if (store != null) {
+			store.clear();
+		}
+		entries.clear();
+	}
+
+	/**
+	 * A cached response: the status line and headers for kept alive and closed
+	 * connections, then the body, each preceded by its length
+	 */
+	public static class Entry {
+
+		private final ByteBuffer data;
+
+		private final int keepAliveLength;
+
+		private final int closeLength;
+
+		private final long storedAt;
+
+		/**
+		 * The off-heap bytes of a stored entry, <code>null</code> on the heap
+		 */
+		private final SlabStore.Slot slot;
+
+		private volatile boolean referenced;
+
+		private volatile boolean stale;
+
+		private Entry(ByteBuffer data, long storedAt, SlabStore.Slot slot) {
+			this.data = data;
+			this.keepAliveLength = data.getInt(0);
+			this.closeLength = data.getInt(4);
+			this.storedAt = storedAt;
+			this.slot = slot;
+		}
+
+		private static byte[] encode(byte[] keepAlive, byte[] close, byte[] body) {
+			ByteBuffer bytes = ByteBuffer.allocate(8 + keepAlive.length + close.length + body.length);
+			bytes.putInt(keepAlive.length).putInt(close.length).put(keepAlive).put(close).put(body);
+			return bytes.array();
+		}
+
+		/**
+		 * Returns true if the response expired when last read, and should be
+		 * revalidated
+		 */
+		public boolean isStale() {
+			return stale;
+		}
+
+		/**
+		 * Returns a response sending these bytes without copying them. An entry
+		 * read from a store gives a single response, which unpins it once
+		 * released.
+		 */
+		public Response newResponse(boolean keepAlive) {
+			ByteBuffer head = data.duplicate();
+			int start = keepAlive ? 8 : 8 + keepAliveLength;
+			head.limit(start + (keepAlive ? keepAliveLength : closeLength));
+			head.position(start);
+			ByteBuffer body = data.duplicate();
+			body.position(8 + keepAliveLength + closeLength);
+			return new RenderedResponse(head, body, keepAlive, slot == null ? null : new Runnable() {
+
+				@Override
+				public void run() {
+					slot.release();
+				}
+			});
+		}
+
+	}
+
+	/**
+	 * A key being processed, with the requests waiting for its response
+	 */
+	private static class Fill {
+
+		private final List<HttpRequest> requests = new ArrayList<HttpRequest>(2);
+
+		private final List<ResponseListener> listeners = new ArrayList<ResponseListener>(2);
+
+		private boolean closed;
+
+		synchronized boolean add(HttpRequest request, ResponseListener listener) {
+			if (closed) {
+				return false;
+			}
+			requests.add(request);
+			listeners.add(listener);
+			return true;
+		}
+
+		/**
+		 * Hand the given response to the waiting requests, or let them be
+		 * processed if <code>null</code>
+		 */
+		void close(Entry entry) {
+			synchronized (this) {
+				closed = true;
+			}
+			for (int i = 0; i < listeners.size(); i++) {
+				HttpRequest request = requests.get(i);
+				try {
+					if (entry != null) {
+						listeners.get(i).onResponse(entry.newResponse(request.isKeepAlive()));
+					} else {
+						listeners.get(i).onMiss(request);
+					}
+				} catch (RuntimeException e) {
+					Log.error(TAG, "Error completing a coalesced request: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	private static class Holder {
+
+		private static final AtomicInteger sequence = new AtomicInteger();
+
+		private static final ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(1, HttpServerDescriptor.RESPONSE_CACHE_REVALIDATE_THREADS), new ThreadFactory() {
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "tempesta-revalidate-" + sequence.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+}
@@ -0,0 +1,27 @@
+package io.github.ilmich.tempesta.web.cache;
+
+public interface ResponseCacheMXBean {
+
+	String getName();
+
+	int getEntryCount();
+
+	int getMaxEntries();
+
+	long getTtl();
+
+	long getStaleWhileRevalidate();
+
+	long getHitCount();
+
+	long getStaleHitCount();
+
+	long getMissCount();
+
+	long getCoalescedCount();
+
+	long getRevalidationCount();
+
+	void clear();
+
+}
@@ -0,0 +1,494 @@
+package io.github.ilmich.tempesta.web.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+import io.github.ilmich.tempesta.util.Closeables;
+import io.github.ilmich.tempesta.util.Log;
+import io.github.ilmich.tempesta.util.MXBeanUtil;
+
+/**
+ * A store of byte arrays by key kept outside the Java heap, for caches of
+ * hundreds of megabytes or more which must not weigh on the garbage
+ * collector.
+ * <p>
+ * Entries are appended to fixed size segments (slabs) of direct or mapped
+ * memory, used as a ring: once the last segment is full the oldest one is
+ * reused, dropping all its entries at once. The index on the heap only holds
+ * primitives, an open addressing table from 64-bit key hashes to segment
+ * offsets; keys are stored and compared along with the bytes. Reads take no
+ * lock.
+ * <p>
+ * Read entries pin their segment, which is not reused until they are
+ * released: the bytes can be written to a socket straight from the segment.
+ * A pinned segment is skipped for the next oldest one, new entries are
+ * rejected only while all the segments are pinned.
+ */
+public class SlabStore implements SlabStoreMXBean {
+
+	private static final String TAG = "SlabStore";
+
+	/**
+	 * Entry header: entry length, timestamp, key length
+	 */
+	private static final int HEADER = 4 + 8 + 4;
+
+	private final String name;
+
+	private final int segmentSize;
+
+	/**
+	 * The segments, allocated on first use
+	 */
+	private final ByteBuffer[] segments;
+
+	/**
+	 * Number of entries read and not released yet, per segment
+	 */
+	private final AtomicIntegerArray pins;
+
+	/**
+	 * The file segments are mapped from, <code>null</code> for direct memory
+	 */
+	private final FileChannel file;
+
+	private final long[] hashes;
+
+	/**
+	 * Entry locations: segment + 1 in the high int, offset in the low one, 0
+	 * for an empty slot
+	 */
+	private final long[] locations;
+
+	private final int mask;
+
+	private final int maxEntries;
+
+	private volatile int size;
+
+	/**
+	 * Guards the index, readers only validate their optimistic reads
+	 */
+	private final StampedLock lock = new StampedLock();
+
+	/**
+	 * The segment being written and the write offset in it, guarded by this
+	 */
+	private int current;
+
+	private int writeOffset;
+
+	/**
+	 * The segments whose entries have been dropped, waiting to be unpinned
+	 */
+	private final boolean[] dropped;
+
+	private final AtomicLong evicted = new AtomicLong();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Create a store in direct memory
+	 * 
+	 * @param name         the name of the store, used for JMX
+	 * @param segmentSize  the size of a segment in bytes, the maximum size of an
+	 *                     entry
+	 * @param segmentCount the number of segments
+	 * @param maxEntries   the maximum number of entries
+	 */
+	public SlabStore(String name, int segmentSize, int segmentCount, int maxEntries) {
+		this(name, segmentSize, segmentCount, maxEntries, null);
+	}
+
+	/**
+	 * Create a store in memory mapped from the given file (which is not
+	 * deleted), e.g. on a tmpfs, or in direct memory if <code>null</code>
+	 */
+	public SlabStore(String name, int segmentSize, int segmentCount, int maxEntries, File file) {
+		if (segmentCount < 1 || segmentSize <= HEADER) {
+			throw new IllegalArgumentException("Invalid segment size or count");
+		}
+		this.name = name;
+		this.segmentSize = segmentSize;
+		this.segments = new ByteBuffer[segmentCount];
+		this.pins = new AtomicIntegerArray(segmentCount);
+		this.dropped = new boolean[segmentCount];
+		this.maxEntries = maxEntries;
+		int capacity = Integer.highestOneBit(Math.max(maxEntries, 2) * 2 - 1) << 1;
+		this.hashes = new long[capacity];
+		this.locations = new long[capacity];
+		this.mask = capacity - 1;
+		if (file != null) {
+			try {
+				this.file = new RandomAccessFile(file, "rw").getChannel();
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Cannot open " + file + ": " + e.getMessage());
+			}
+		} else {
+			this.file = null;
+		}
+		MXBeanUtil.registerMXBean(this, "SlabStore", name);
+	}
+
+	/**
+	 * Store the given bytes, replacing the ones stored for the same key
+	 * 
+	 * @param timestamp a time stored with the entry, e.g. its creation time
+	 * @return <code>false</code> if the bytes could not be stored: too large,
+	 *         index full or oldest segment pinned
+	 */
+	public boolean put(String key, long timestamp, byte[] data) {
+		long length = HEADER + 2L * key.length() + data.length;
+		if (length > segmentSize) {
+			rejected.incrementAndGet();
+			return false;
+		}
+		long hash = hash(key);
+		synchronized (this) {
+			if ((segments[current] == null || writeOffset + length > segmentSize) && !advance()) {
+				rejected.incrementAndGet();
+				return false;
+			}
+			ByteBuffer segment = segments[current];
+			int offset = writeOffset;
+			segment.putInt(offset, (int) length);
+			segment.putLong(offset + 4, timestamp);
+			segment.putInt(offset + 12, key.length());
+			int position = offset + HEADER;
+			for (int i = 0; i < key.length(); i++, position += 2) {
+				segment.putChar(position, key.charAt(i));
+			}
+			ByteBuffer target = segment.duplicate();
+			target.position(position);
+			target.put(data);
+			writeOffset += length;
+
+			long stamp = lock.writeLock();
+			try {
+				if (!insert(hash, ((long) (current + 1) << 32) | offset)) {
+					rejected.incrementAndGet();
+					return false;
+				}
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the entry stored for the given key, pinned until released, or
+	 * <code>null</code>
+	 */
+	public Slot get(String key) {
+		long hash = hash(key);
+		long stamp = lock.tryOptimisticRead();
+		long location = find(hash);
+		if (location != 0) {
+			pins.incrementAndGet(segmentOf(location));
+		}
+		if (!lock.validate(stamp)) { // changed while reading, read again locked
+			if (location != 0) {
+				pins.decrementAndGet(segmentOf(location));
+			}
+			stamp = lock.readLock();
+			try {
+				location = find(hash);
+				if (location != 0) {
+					pins.incrementAndGet(segmentOf(location));
+				}
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		if (location == 0) {
+			return null;
+		}
+		int index = segmentOf(location);
+		ByteBuffer segment = segments[index];
+		int offset = (int) location;
+		int keyLength = segment.getInt(offset + 12);
+		boolean matches = keyLength == key.length();
+		for (int i = 0, position = offset + HEADER; matches && i < keyLength; i++, position += 2) {
+			matches = segment.getChar(position) == key.charAt(i);
+		}
+		if (!matches) { // another key with the same hash
+			pins.decrementAndGet(index);
+			return null;
+		}
+		ByteBuffer data = segment.duplicate();
+		data.limit(offset + segment.getInt(offset));
+		data.position(offset + HEADER + 2 * keyLength);
+		return new Slot(index, data.slice().asReadOnlyBuffer(), segment.getLong(offset + 4));
+	}
+
+	public void remove(String key) {
+		long hash = hash(key);
+		long stamp = lock.writeLock();
+		try {
+			for (int i = (int) hash & mask, probes = 0; hashes[i] != 0 && probes <= mask; i = (i + 1) & mask, probes++) {
+				if (hashes[i] == hash) {
+					delete(i);
+					return;
+				}
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public void clear() {
+		long stamp = lock.writeLock();
+		try {
+			Arrays.fill(hashes, 0);
+			Arrays.fill(locations, 0);
+			size = 0;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Stop exposing this store through JMX and close its file, the memory is
+	 * freed once the store and the read entries are unreachable
+	 */
+	public void shutdown() {
+		MXBeanUtil.unregisterMXBean("SlabStore", name);
+		Closeables.closeQuietly(file);
+	}
+
+	/**
+	 * Move to the oldest segment not pinned, dropping its entries. Called
+	 * holding the lock on this store.
+	 * 
+	 * @return <code>false</code> if all the segments are pinned
+	 */
+	private boolean advance() {
+		int count = segments.length;
+		for (int k = segments[current] == null ? 0 : 1; k <= count; k++) {
+			int next = (current + k) % count;
+			if (segments[next] == null) {
+				try {
+					segments[next] = allocate(next);
+				} catch (IOException e) {
+					Log.error(TAG, "Cannot map segment " + next + " of " + name + ": " + e.getMessage());
+					return false;
+				}
+			} else {
+				if (pins.get(next) != 0) {
+					continue; // being read, try a newer one
+				}
+				if (!dropped[next]) {
+					drop(next);
+					dropped[next] = true;
+					evicted.incrementAndGet();
+				}
+				if (pins.get(next) != 0) {
+					continue; // read while dropping
+				}
+				dropped[next] = false;
+			}
+			current = next;
+			writeOffset = 0;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Remove the entries of the given segment from the index
+	 */
+	private void drop(int segment) {
+		long stamp = lock.writeLock();
+		try {
+			for (int i = 0; i <= mask;) {
+				if (locations[i] != 0 && segmentOf(locations[i]) == segment) {
+					delete(i); // an entry may have been shifted into i
+				} else {
+					i++;
+				}
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	private ByteBuffer allocate(int index) throws IOException {
+		if (file != null) {
+			return file.map(FileChannel.MapMode.READ_WRITE, (long) index * segmentSize, segmentSize);
+		}
+		return ByteBuffer.allocateDirect(segmentSize);
+	}
+
+	/**
+	 * Returns the location of the given hash, 0 if not found. Bounded, since
+	 * it can run while the index changes.
+	 */
+	private long find(long hash) {
+		for (int i = (int) hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+			long h = hashes[i];
+			if (h == hash) {
+				return locations[i];
+			} else if (h == 0) {
+				return 0;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Called holding the write lock
+	 */
+	private boolean insert(long hash, long location) {
+		int i = (int) hash & mask;
+		while (hashes[i] != 0) {
+			if (hashes[i] == hash) {
+				locations[i] = location;
+				return true;
+			}
+			i = (i + 1) & mask;
+		}
+		if (size >= maxEntries) {
+			return false;
+		}
+		locations[i] = location;
+		hashes[i] = hash;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Empty the given slot, shifting back the following entries of its probe
+	 * sequence. Called holding the write lock.
+	 */
+	private void delete(int i) {
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (hashes[j] == 0) {
+				break;
+			}
+			int home = (int) hashes[j] & mask;
+			// move j to i unless its home lies cyclically in (i, j]
+			if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+				hashes[i] = hashes[j];
+				locations[i] = locations[j];
+				i = j;
+			}
+		}
+		hashes[i] = 0;
+		locations[i] = 0;
+		size--;
+	}
+
+	private static int segmentOf(long location) {
+		return (int) (location >>> 32) - 1;
+	}
+
+	/**
+	 * 64-bit FNV-1a of the characters of the given key, never 0
+	 */
+	private static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			h = (h ^ key.charAt(i)) * 0x100000001b3L;
+		}
+		h ^= h >>> 29;
+		return h == 0 ? 1 : h;
+	}
+
+	// implements SlabStoreMXBean
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	@Override
+	public int getSegmentCount() {
+		return segments.length;
+	}
+
+	@Override
+	public synchronized int getAllocatedSegmentCount() {
+		int count = 0;
+		for (ByteBuffer segment : segments) {
+			if (segment != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public int getEntryCount() {
+		return size;
+	}
+
+	@Override
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	@Override
+	public long getEvictedSegmentCount() {
+		return evicted.get();
+	}
+
+	@Override
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * An entry read from the store, whose segment is pinned until released
+	 */
+	public class Slot {
+
+		private final int segment;
+
+		private final ByteBuffer data;
+
+		private final long timestamp;
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private Slot(int segment, ByteBuffer data, long timestamp) {
+			this.segment = segment;
+			this.data = data;
+			this.timestamp = timestamp;
+		}
+
+		/**
+		 * Returns the stored bytes, read only and valid until released
+		 */
+		public ByteBuffer getData() {
+			return data;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public void release() {
+			if (released.compareAndSet(false, true)) {
+				pins.decrementAndGet(segment);
+			}
+		}
+	}
+
+}
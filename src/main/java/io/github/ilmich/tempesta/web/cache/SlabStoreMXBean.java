@@ -0,0 +1,23 @@
+package io.github.ilmich.tempesta.web.cache;
+
+public interface SlabStoreMXBean {
+
+	String getName();
+
+	int getSegmentSize();
+
+	int getSegmentCount();
+
+	int getAllocatedSegmentCount();
+
+	int getEntryCount();
+
+	int getMaxEntries();
+
+	long getEvictedSegmentCount();
+
+	long getRejectedCount();
+
+	void clear();
+
+}
@@ -0,0 +1,262 @@
+package io.github.ilmich.tempesta.web.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.ilmich.tempesta.util.Closeables;
+import io.github.ilmich.tempesta.util.DateUtil;
+import io.github.ilmich.tempesta.util.Log;
+import io.github.ilmich.tempesta.util.MXBeanUtil;
+
+/**
+ * An in-memory cache of static files, bounded by the total size of the cached
+ * files.
+ * <p>
+ * Each entry holds the file content in a direct buffer together with its
+ * entity headers already encoded, so that serving a hit touches neither the
+ * filesystem nor the MIME table, and the content is written to the socket
+ * without copies. Lookups are lock free; eviction approximates LRU with the
+ * CLOCK algorithm: entries hit since the last sweep get a second chance.
+ * <p>
+ * Entries are validated against the file attributes given by the caller,
+ * usually from a {@link FileMetadataCache}: a file whose size or modification
+ * time changed is read again.
+ */
+public class StaticContentCache implements StaticContentCacheMXBean {
+
+	private static final String TAG = "StaticContentCache";
+
+	private static final Charset ASCII = Charset.forName("ASCII");
+
+	private final String name;
+
+	private final long maxSize;
+
+	private final long maxFileSize;
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	private final AtomicLong size = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param name          the name of the cache, used for JMX
+	 * @param maxSize       the maximum total size of the cached files, in bytes
+	 * @param maxFileSize   the maximum size of a cached file, in bytes
+	 */
+	public StaticContentCache(String name, long maxSize, long maxFileSize) {
+		this.name = name;
+		this.maxSize = maxSize;
+		this.maxFileSize = maxFileSize;
+		MXBeanUtil.registerMXBean(this, "StaticContentCache", name);
+	}
+
+	/**
+	 * Returns the entry cached for the given key, or <code>null</code> if there
+	 * is none or the file changed since it was cached
+	 * 
+	 * @param metadata the current attributes of the file
+	 */
+	public Entry get(String key, FileMetadata metadata) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		if (metadata.getLastModified() != entry.lastModified || metadata.getLength() != entry.length) {
+			remove(key, entry);
+			misses.incrementAndGet();
+			return null;
+		}
+		entry.referenced = true;
+		hits.incrementAndGet();
+		return entry;
+	}
+
+	/**
+	 * Returns true if the described file is small enough to be cached
+	 */
+	public boolean accepts(FileMetadata metadata) {
+		return metadata.getLength() <= maxFileSize && metadata.getLength() <= maxSize;
+	}
+
+	/**
+	 * Read the described file and cache it under the given key.
+	 * 
+	 * @param key      the key of the entry, e.g. the requested path
+	 * @param metadata the attributes of the file to read
+	 * @return the new entry, or <code>null</code> if the file cannot be read,
+	 *         changed or is too large
+	 */
+	public Entry put(String key, FileMetadata metadata) {
+		File file = metadata.getFile();
+		long length = metadata.getLength();
+		if (!accepts(metadata)) {
+			return null;
+		}
+		ByteBuffer content = ByteBuffer.allocateDirect((int) length);
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			FileChannel channel = in.getChannel();
+			while (content.hasRemaining() && channel.read(content) >= 0) {
+				// read until the end of the file
+			}
+		} catch (IOException e) {
+			Log.warn(TAG, "Cannot cache " + file + ": " + e.getMessage());
+			return null;
+		} finally {
+			Closeables.closeQuietly(in);
+		}
+		if (content.hasRemaining() || file.lastModified() != metadata.getLastModified()) {
+			return null; // file changed while reading
+		}
+		content.flip();
+
+		Entry entry = new Entry(metadata, content.asReadOnlyBuffer());
+		Entry previous = entries.put(key, entry);
+		size.addAndGet(length - (previous != null ? previous.length : 0));
+		if (size.get() > maxSize) {
+			evict();
+		}
+		return entry;
+	}
+
+	public void invalidate(String key) {
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			remove(key, entry);
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (String key : entries.keySet()) {
+			invalidate(key);
+		}
+	}
+
+	private void remove(String key, Entry entry) {
+		if (entries.remove(key, entry)) {
+			size.addAndGet(-entry.length);
+		}
+	}
+
+	/**
+	 * Sweep the entries, evicting the ones not hit since the last sweep until
+	 * the cache fits again
+	 */
+	private synchronized void evict() {
+		for (int pass = 0; pass < 2 && size.get() > maxSize; pass++) {
+			Iterator<java.util.Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+			while (it.hasNext() && size.get() > maxSize) {
+				java.util.Map.Entry<String, Entry> e = it.next();
+				Entry entry = e.getValue();
+				if (entry.referenced) {
+					entry.referenced = false;
+				} else {
+					remove(e.getKey(), entry);
+					evictions.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	// implements StaticContentCacheMXBean
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getEntryCount() {
+		return entries.size();
+	}
+
+	@Override
+	public long getSize() {
+		return size.get();
+	}
+
+	@Override
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	@Override
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	@Override
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * A cached file
+	 */
+	public static class Entry {
+
+		private final long lastModified;
+
+		private final long length;
+
+		private final ByteBuffer content;
+
+		private final byte[] headers;
+
+		private volatile boolean referenced = false;
+
+		private Entry(FileMetadata metadata, ByteBuffer content) {
+			this.lastModified = metadata.getLastModified();
+			this.length = content.remaining();
+			this.content = content;
+			this.headers = ("Last-Modified: " + DateUtil.parseToRFC1123(lastModified) + "\r\n"
+					+ "Cache-Control: public\r\n" + "Content-Type: " + metadata.getContentType() + "\r\n"
+					+ "Etag: " + metadata.getEtag() + "\r\n" + "Accept-Ranges: bytes\r\n").getBytes(ASCII);
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * Returns a new buffer over the cached content, to be written to a single
+		 * response
+		 */
+		public ByteBuffer getContent() {
+			return content.duplicate();
+		}
+
+		/**
+		 * Returns the entity headers, encoded. Must not be modified.
+		 */
+		public byte[] getHeaders() {
+			return headers;
+		}
+	}
+
+}
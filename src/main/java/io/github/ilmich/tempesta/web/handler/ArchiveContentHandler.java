@@ -0,0 +1,79 @@
+package io.github.ilmich.tempesta.web.handler;
+
+import java.io.File;
+import java.io.IOException;
+
+import io.github.ilmich.tempesta.util.HttpUtil;
+import io.github.ilmich.tempesta.util.Log;
+import io.github.ilmich.tempesta.web.cache.AssetArchive;
+import io.github.ilmich.tempesta.web.http.HttpRequest;
+import io.github.ilmich.tempesta.web.http.HttpRequestHandler;
+import io.github.ilmich.tempesta.web.http.HttpResponse;
+import io.github.ilmich.tempesta.web.http.protocol.HttpStatus;
+
+/**
+ * A RequestHandler that serves static content from an {@link AssetArchive}
+ * built by {@link AssetPacker}, e.g. the path "/static/a.css" is served from
+ * the asset "static/a.css".
+ * <p>
+ * The archive is mapped once and its index kept in memory: a request is
+ * answered with a slice of the mapping and headers encoded when the archive
+ * was opened, without any system call, so the handler runs on the event loop.
+ * The precompressed variants are negotiated from the Accept-Encoding header.
+ */
+public class ArchiveContentHandler extends HttpRequestHandler {
+
+	private static final String TAG = "ArchiveContentHandler";
+
+	private final AssetArchive archive;
+
+	public ArchiveContentHandler(AssetArchive archive) {
+		this.archive = archive;
+		setBlocking(false);
+	}
+
+	/**
+	 * Open the archive at the given path
+	 */
+	public ArchiveContentHandler(String archive) throws IOException {
+		this(AssetArchive.open(new File(archive)));
+		Log.info(TAG, "Serving " + this.archive.size() + " assets from " + archive);
+	}
+
+	/** {inheritDoc} */
+	@Override
+	public void get(HttpRequest request, HttpResponse response) {
+		perform(request, response, true);
+	}
+
+	/** {inheritDoc} */
+	@Override
+	public void head(HttpRequest request, HttpResponse response) {
+		perform(request, response, false);
+	}
+
+	private void perform(HttpRequest request, HttpResponse response, boolean hasBody) {
+		AssetArchive.Asset asset = archive.find(request.getRequestedPath().substring(1));
+		if (asset == null) {
+			NotFoundRequestHandler.getInstance().get(request, response);
+			return;
+		}
+		AssetArchive.Variant variant = asset.select(request.getHeader("Accept-Encoding"));
+		response.setRenderedHeaders(variant.getHeaders());
+		if (isNotModified(request, asset, variant)) {
+			response.setStatus(HttpStatus.REDIRECTION_NOT_MODIFIED);
+			return;
+		}
+		if (hasBody) {
+			response.setContent(variant.getContent());
+		} else {
+			response.setHeader("Content-Length", String.valueOf(variant.getLength()));
+		}
+	}
+
+	private boolean isNotModified(HttpRequest request, AssetArchive.Asset asset, AssetArchive.Variant variant) {
+		return HttpUtil.isNotModified(request.getHeader("If-None-Match"), request.getHeader("If-Modified-Since"),
+				variant.getEtag(), asset.getLastModified());
+	}
+
+}
@@ -0,0 +1,265 @@
+package io.github.ilmich.tempesta.web.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import io.github.ilmich.tempesta.util.Closeables;
+import io.github.ilmich.tempesta.util.HttpUtil;
+import io.github.ilmich.tempesta.web.cache.AssetArchive;
+
+/**
+ * Pack static assets into an {@link AssetArchive}, served by
+ * {@link ArchiveContentHandler}.
+ * <p>
+ * Sources are directories, whose files are stored by their path relative to
+ * the directory, or classpath prefixes ("classpath:static"), whose resources
+ * are stored by their resource name. Compressible assets also get a gzip
+ * variant when it is smaller; in directories, fresh ".gz" and ".br" sidecars
+ * are used as variants instead of being packed as assets.
+ * 
+ * <pre>
+ * java io.github.ilmich.tempesta.web.handler.AssetPacker assets.pak /var/www classpath:static
+ * </pre>
+ */
+public class AssetPacker {
+
+	private static final String CLASSPATH = "classpath:";
+
+	private final Map<String, Source> sources = new TreeMap<String, Source>();
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: AssetPacker <archive> <directory | classpath:prefix>...");
+			System.exit(1);
+		}
+		AssetPacker packer = new AssetPacker();
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].startsWith(CLASSPATH)) {
+				packer.addClasspath(args[i].substring(CLASSPATH.length()));
+			} else {
+				packer.addDirectory(new File(args[i]));
+			}
+		}
+		int count = packer.pack(new File(args[0]));
+		System.out.println("Packed " + count + " assets into " + args[0]);
+	}
+
+	/**
+	 * Add the files under the given directory
+	 */
+	public AssetPacker addDirectory(File dir) {
+		addDirectory(dir, "");
+		return this;
+	}
+
+	private void addDirectory(File dir, String prefix) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String path = prefix + file.getName();
+			if (file.isDirectory()) {
+				addDirectory(file, path + "/");
+			} else if (!isSidecar(file)) {
+				sources.put(path, new Source(file, null, file.lastModified()));
+			}
+		}
+	}
+
+	private boolean isSidecar(File file) {
+		String name = file.getPath();
+		return (name.endsWith(".gz") || name.endsWith(".br"))
+				&& new File(name.substring(0, name.length() - 3)).isFile();
+	}
+
+	/**
+	 * Add the resources under the given classpath prefix, e.g. "static"
+	 */
+	public AssetPacker addClasspath(String prefix) throws IOException {
+		prefix = prefix.endsWith("/") ? prefix.substring(0, prefix.length() - 1) : prefix;
+		Enumeration<URL> urls = AssetPacker.class.getClassLoader().getResources(prefix);
+		while (urls.hasMoreElements()) {
+			URL url = urls.nextElement();
+			if ("file".equals(url.getProtocol())) {
+				addDirectory(new File(URLDecoder.decode(url.getPath(), "UTF-8")), prefix + "/");
+			} else if ("jar".equals(url.getProtocol())) {
+				JarFile jar = ((JarURLConnection) url.openConnection()).getJarFile();
+				Enumeration<JarEntry> entries = jar.entries();
+				while (entries.hasMoreElements()) {
+					JarEntry entry = entries.nextElement();
+					if (!entry.isDirectory() && entry.getName().startsWith(prefix + "/")) {
+						sources.put(entry.getName(), new Source(null, new URL(url, "/" + entry.getName()),
+								entry.getTime()));
+					}
+				}
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Write the archive
+	 * 
+	 * @return the number of packed assets
+	 */
+	public int pack(File archive) throws IOException {
+		File data = new File(archive.getPath() + ".data");
+		ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+		DataOutputStream index = new DataOutputStream(indexBytes);
+		OutputStream out = new FileOutputStream(data);
+		long offset = 0;
+		try {
+			for (Map.Entry<String, Source> e : sources.entrySet()) { // sorted by path
+				String path = e.getKey();
+				Source source = e.getValue();
+				byte[] content = source.read();
+				String contentType = StaticContentHandler.getInstance().getContentType(path);
+				CRC32 crc = new CRC32();
+				crc.update(content);
+
+				List<String> encodings = new ArrayList<String>();
+				List<byte[]> variants = new ArrayList<byte[]>();
+				if (HttpUtil.isCompressible(contentType)) {
+					byte[] br = source.readSidecar(".br");
+					if (br != null && br.length < content.length) {
+						encodings.add("br");
+						variants.add(br);
+					}
+					byte[] gzip = source.readSidecar(".gz");
+					if (gzip == null) {
+						gzip = gzip(content);
+					}
+					if (gzip.length < content.length) {
+						encodings.add("gzip");
+						variants.add(gzip);
+					}
+				}
+				encodings.add("");
+				variants.add(content);
+
+				index.writeUTF(path);
+				index.writeUTF(contentType);
+				index.writeLong(source.lastModified);
+				index.writeInt((int) crc.getValue());
+				index.writeByte(variants.size());
+				for (int i = 0; i < variants.size(); i++) {
+					index.writeUTF(encodings.get(i));
+					index.writeLong(offset);
+					index.writeInt(variants.get(i).length);
+					out.write(variants.get(i));
+					offset += variants.get(i).length;
+				}
+			}
+		} finally {
+			Closeables.closeQuietly(out);
+		}
+		if (16 + indexBytes.size() + offset > Integer.MAX_VALUE) {
+			data.delete();
+			throw new IOException("Archive larger than 2GB, split the assets");
+		}
+
+		DataOutputStream header = new DataOutputStream(new FileOutputStream(archive));
+		InputStream in = new FileInputStream(data);
+		try {
+			header.writeInt(AssetArchive.MAGIC);
+			header.writeInt(AssetArchive.VERSION);
+			header.writeInt(sources.size());
+			header.writeInt(indexBytes.size());
+			indexBytes.writeTo(header);
+			copy(in, header);
+		} finally {
+			Closeables.closeQuietly(in);
+			Closeables.closeQuietly(header);
+			data.delete();
+		}
+		return sources.size();
+	}
+
+	private static byte[] gzip(byte[] content) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2 + 64);
+		OutputStream out = new GZIPOutputStream(bytes) {
+			{
+				def.setLevel(Deflater.BEST_COMPRESSION);
+			}
+		};
+		out.write(content);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			copy(in, bytes);
+			return bytes.toByteArray();
+		} finally {
+			Closeables.closeQuietly(in);
+		}
+	}
+
+	private static void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[64 * 1024];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, read);
+		}
+	}
+
+	/**
+	 * An asset to pack, from a file or a classpath resource
+	 */
+	private static class Source {
+
+		private final File file;
+
+		private final URL url;
+
+		private final long lastModified;
+
+		Source(File file, URL url, long lastModified) {
+			this.file = file;
+			this.url = url;
+			this.lastModified = lastModified;
+		}
+
+		byte[] read() throws IOException {
+			return readFully(file != null ? new FileInputStream(file) : url.openStream());
+		}
+
+		/**
+		 * Returns the content of the fresh sidecar with the given extension, or
+		 * <code>null</code>
+		 */
+		byte[] readSidecar(String extension) throws IOException {
+			if (file == null) {
+				return null;
+			}
+			File sidecar = new File(file.getPath() + extension);
+			if (!sidecar.isFile() || sidecar.lastModified() < file.lastModified()) {
+				return null;
+			}
+			return readFully(new FileInputStream(sidecar));
+		}
+	}
+
+}
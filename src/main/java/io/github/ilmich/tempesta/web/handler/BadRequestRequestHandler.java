@@ -19,55 +19,22 @@
  */
 package io.github.ilmich.tempesta.web.handler;
 
-import io.github.ilmich.tempesta.web.http.HttpRequest;
-import io.github.ilmich.tempesta.web.http.HttpRequestHandler;
-import io.github.ilmich.tempesta.web.http.HttpResponse;
+import java.nio.charset.Charset;
+
+import io.github.ilmich.tempesta.web.http.CannedResponse;
 import io.github.ilmich.tempesta.web.http.protocol.HttpStatus;
 
-public class BadRequestRequestHandler extends HttpRequestHandler {
+public class BadRequestRequestHandler extends CannedRequestHandler {
 
 	private final static BadRequestRequestHandler instance = new BadRequestRequestHandler();
 
 	private BadRequestRequestHandler() {
+		super(new CannedResponse(HttpStatus.CLIENT_ERROR_BAD_REQUEST, "text/plain",
+				"HTTP 1.1 requests must include the Host: header".getBytes(Charset.forName("ASCII")), true));
 	}
 
 	public static final BadRequestRequestHandler getInstance() {
 		return instance;
 	}
 
-	@Override
-	public void get(HttpRequest request, HttpResponse response) {
-		perform(request, response);
-	}
-
-	@Override
-	public void post(HttpRequest request, HttpResponse response) {
-		perform(request, response);
-	}
-
-	@Override
-	public void put(HttpRequest request, HttpResponse response) {
-		perform(request, response);
-	}
-
-	@Override
-	public void delete(HttpRequest request, HttpResponse response) {
-		perform(request, response);
-	}
-
-	@Override
-	public void head(HttpRequest request, HttpResponse response) {
-		perform(request, response);
-	}
-
-	@Override
-	public void option(HttpRequest request, HttpResponse response) {
-		perform(request, response);
-	}
-
-	public void perform(HttpRequest request, HttpResponse response) {
-		response.setStatus(HttpStatus.CLIENT_ERROR_BAD_REQUEST);
-		response.setHeader("Connection", "close");
-		response.write("HTTP 1.1 requests must include the Host: header");
-	}
 }
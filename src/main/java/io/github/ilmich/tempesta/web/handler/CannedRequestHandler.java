@@ -0,0 +1,65 @@
+package io.github.ilmich.tempesta.web.handler;
+
+import io.github.ilmich.tempesta.web.http.CannedResponse;
+import io.github.ilmich.tempesta.web.http.HttpRequest;
+import io.github.ilmich.tempesta.web.http.HttpRequestHandler;
+import io.github.ilmich.tempesta.web.http.HttpResponse;
+import io.github.ilmich.tempesta.web.http.protocol.HttpVerb;
+
+/**
+ * Answer every request with the same {@link CannedResponse}, e.g. an error
+ * page or a health check. When the route has no filters the response is sent
+ * as is, without running the handler.
+ */
+public class CannedRequestHandler extends HttpRequestHandler {
+
+	private final CannedResponse response;
+
+	public CannedRequestHandler(CannedResponse response) {
+		this.response = response;
+		setBlocking(false);
+	}
+
+	public CannedResponse getResponse() {
+		return response;
+	}
+
+	@Override
+	public void get(HttpRequest request, HttpResponse response) {
+		perform(request, response);
+	}
+
+	@Override
+	public void post(HttpRequest request, HttpResponse response) {
+		perform(request, response);
+	}
+
+	@Override
+	public void put(HttpRequest request, HttpResponse response) {
+		perform(request, response);
+	}
+
+	@Override
+	public void delete(HttpRequest request, HttpResponse response) {
+		perform(request, response);
+	}
+
+	@Override
+	public void head(HttpRequest request, HttpResponse response) {
+		perform(request, response);
+	}
+
+	@Override
+	public void option(HttpRequest request, HttpResponse response) {
+		perform(request, response);
+	}
+
+	@Override
+	public void patch(HttpRequest request, HttpResponse response) {
+		perform(request, response);
+	}
+
+	private void perform(HttpRequest request, HttpResponse response) {
+		this.response.apply(response, request.getMethod() != HttpVerb.HEAD);
+	}
+}
@@ -19,55 +19,22 @@
  */
 package io.github.ilmich.tempesta.web.handler;
 
-import io.github.ilmich.tempesta.web.http.HttpRequest;
-import io.github.ilmich.tempesta.web.http.HttpRequestHandler;
-import io.github.ilmich.tempesta.web.http.HttpResponse;
+import java.nio.charset.Charset;
+
+import io.github.ilmich.tempesta.web.http.CannedResponse;
 import io.github.ilmich.tempesta.web.http.protocol.HttpStatus;
 
-public class ForbiddenRequestHandler extends HttpRequestHandler {
+public class ForbiddenRequestHandler extends CannedRequestHandler {
 
 	private final static ForbiddenRequestHandler instance = new ForbiddenRequestHandler();
 
 	private ForbiddenRequestHandler() {
+		super(new CannedResponse(HttpStatus.CLIENT_ERROR_FORBIDDEN, "text/plain",
+				"Authentication failed".getBytes(Charset.forName("ASCII")), true));
 	}
 
 	public static final ForbiddenRequestHandler getInstance() {
 		return instance;
 	}
 
-	@Override
-	public void get(HttpRequest request, HttpResponse response) {
-		perform(request, response);
-	}
-
-	@Override
-	public void post(HttpRequest request, HttpResponse response) {
-		perform(request, response);
-	}
-
-	@Override
-	public void put(HttpRequest request, HttpResponse response) {
-		perform(request, response);
-	}
-
-	@Override
-	public void delete(HttpRequest request, HttpResponse response) {
-		perform(request, response);
-	}
-
-	@Override
-	public void head(HttpRequest request, HttpResponse response) {
-		perform(request, response);
-	}
-
-	@Override
-	public void option(HttpRequest request, HttpResponse response) {
-		perform(request, response);
-	}
-
-	private void perform(HttpRequest request, HttpResponse response) {
-		response.setStatus(HttpStatus.CLIENT_ERROR_FORBIDDEN);
-		response.setHeader("Connection", "close");
-		response.write("Authentication failed");
-	}
 }
@@ -0,0 +1,125 @@
+package io.github.ilmich.tempesta.web.handler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import io.github.ilmich.tempesta.util.Closeables;
+import io.github.ilmich.tempesta.util.HttpUtil;
+import io.github.ilmich.tempesta.util.Log;
+import io.github.ilmich.tempesta.web.http.HttpServerDescriptor;
+
+/**
+ * Build the gzip variants ("a.js.gz") of the compressible static files under a
+ * directory, served by {@link StaticContentHandler} to the clients accepting
+ * them. Variants missing or older than their file are (re)built with the best
+ * compression, written to a temporary file and renamed so that a variant is
+ * never served half written. Files smaller than
+ * {@link HttpServerDescriptor#STATIC_GZIP_MIN_SIZE}, or not compressing, are
+ * skipped.
+ * <p>
+ * Meant to run once at startup (see
+ * {@link io.github.ilmich.tempesta.web.http.HttpServerBuilder#precompressStaticContent(String)})
+ * or periodically in the background.
+ */
+public class GzipSidecarBuilder implements Runnable {
+
+	private static final String TAG = "GzipSidecarBuilder";
+
+	private final File root;
+
+	private final long minSize;
+
+	private int built;
+
+	public GzipSidecarBuilder(File root) {
+		this(root, HttpServerDescriptor.STATIC_GZIP_MIN_SIZE);
+	}
+
+	/**
+	 * @param root    the directory to walk
+	 * @param minSize the minimum size of a compressed file, in bytes
+	 */
+	public GzipSidecarBuilder(File root, long minSize) {
+		this.root = root;
+		this.minSize = minSize;
+	}
+
+	@Override
+	public void run() {
+		built = 0;
+		long start = System.currentTimeMillis();
+		walk(root);
+		Log.info(TAG, "Built " + built + " gzip variants under " + root + " in "
+				+ (System.currentTimeMillis() - start) + "ms");
+	}
+
+	private void walk(File dir) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				walk(file);
+			} else if (isCandidate(file)) {
+				File variant = new File(file.getPath() + ".gz");
+				if (!variant.exists() || variant.lastModified() < file.lastModified()) {
+					compress(file, variant);
+				}
+			}
+		}
+	}
+
+	private boolean isCandidate(File file) {
+		String name = file.getName();
+		if (name.endsWith(".gz") || name.endsWith(".br") || name.endsWith(".tmp")) {
+			return false;
+		}
+		return file.length() >= minSize
+				&& HttpUtil.isCompressible(StaticContentHandler.getInstance().getContentType(file));
+	}
+
+	private void compress(File file, File variant) {
+		File tmp = new File(variant.getPath() + ".tmp");
+		long lastModified = file.lastModified();
+		InputStream in = null;
+		OutputStream out = null;
+		try {
+			in = new FileInputStream(file);
+			out = new GZIPOutputStream(new FileOutputStream(tmp), 64 * 1024) {
+				{
+					def.setLevel(Deflater.BEST_COMPRESSION);
+				}
+			};
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+			}
+			out.close();
+			out = null;
+			if (tmp.length() >= file.length() || file.lastModified() != lastModified) {
+				// no gain, or the file changed while compressing
+				tmp.delete();
+			} else if (tmp.renameTo(variant)) {
+				built++;
+			} else {
+				Log.warn(TAG, "Cannot rename " + tmp + " to " + variant);
+				tmp.delete();
+			}
+		} catch (IOException e) {
+			Log.warn(TAG, "Cannot compress " + file + ": " + e.getMessage());
+			tmp.delete();
+		} finally {
+			Closeables.closeQuietly(in);
+			Closeables.closeQuietly(out);
+		}
+	}
+
+}
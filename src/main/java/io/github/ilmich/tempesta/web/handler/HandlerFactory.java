@@ -1,9 +1,15 @@
 package io.github.ilmich.tempesta.web.handler;
 
+import java.util.concurrent.ExecutorService;
+
+import io.github.ilmich.tempesta.web.cache.ResponseCache;
 import io.github.ilmich.tempesta.web.handler.RequestHandler;
+import io.github.ilmich.tempesta.web.http.FilterChain;
 import io.github.ilmich.tempesta.web.http.HttpHandlerFactory;
 import io.github.ilmich.tempesta.web.http.HttpRequestHandler;
 import io.github.ilmich.tempesta.web.http.Request;
+import io.github.ilmich.tempesta.web.http.protocol.HttpVerb;
+import io.github.ilmich.tempesta.web.http.router.VirtualHost;
 
 public interface HandlerFactory {
 
@@ -11,4 +17,36 @@ public interface HandlerFactory {
 
 	public HttpHandlerFactory addRoute(String path, HttpRequestHandler handler);
 
+	public HttpHandlerFactory addRoute(String path, HttpRequestHandler handler, ExecutorService executor);
+
+	public HttpHandlerFactory addRoute(HttpVerb verb, String path, HttpRequestHandler handler);
+
+	public HttpHandlerFactory addRoute(HttpVerb verb, String path, HttpRequestHandler handler,
+			ExecutorService executor);
+
+	public HttpHandlerFactory addRoute(HttpVerb verb, String path, HttpRequestHandler handler,
+			ExecutorService executor, ResponseCache cache);
+
+	public HttpHandlerFactory addVirtualHost(VirtualHost host);
+
+	/**
+	 * Returns the executor dedicated to the route matched by the given request,
+	 * or <code>null</code> if it runs on the default executor. Must be called
+	 * after {@link #getHandler(Request)}.
+	 */
+	public ExecutorService getExecutor(Request request);
+
+	/**
+	 * Returns the filters to run around the handler of the given request. Must be
+	 * called after {@link #getHandler(Request)}.
+	 */
+	public FilterChain getFilterChain(Request request);
+
+	/**
+	 * Returns the cache of the responses of the route matched by the given
+	 * request, or <code>null</code> if they are not cached. Must be called after
+	 * {@link #getHandler(Request)}.
+	 */
+	public ResponseCache getResponseCache(Request request);
+
 }
@@ -0,0 +1,32 @@
+package io.github.ilmich.tempesta.web.handler;
+
+/**
+ * How the instances of a request handler are shared between requests.
+ * Instances other than the registered one are created with
+ * {@link RequestHandlerFactory#cloneHandler(RequestHandler)}: handlers holding
+ * mutable objects should override <code>clone()</code> to copy them.
+ */
+public enum HandlerLifecycle {
+
+	/**
+	 * One instance serves all the requests, concurrently: the handler must be
+	 * thread safe
+	 */
+	SINGLETON,
+
+	/**
+	 * One instance per thread, suited to worker pools. Virtual threads are
+	 * never reused, one instance each would mean one per request: requests
+	 * handled on a virtual thread, e.g. with
+	 * {@link io.github.ilmich.tempesta.io.executor.VirtualThreadExecutor}, get
+	 * an instance as with {@link #POOLED} instead.
+	 */
+	THREAD,
+
+	/**
+	 * A bounded pool of instances, each one serving one request at a time. When
+	 * the pool is empty a new instance is cloned instead of waiting.
+	 */
+	POOLED;
+
+}
@@ -19,30 +19,19 @@
  */
 package io.github.ilmich.tempesta.web.handler;
 
-import io.github.ilmich.tempesta.web.http.HttpRequest;
-import io.github.ilmich.tempesta.web.http.HttpRequestHandler;
-import io.github.ilmich.tempesta.web.http.HttpResponse;
+import io.github.ilmich.tempesta.web.http.CannedResponse;
 import io.github.ilmich.tempesta.web.http.protocol.HttpStatus;
 
-public class HttpContinueRequestHandler extends HttpRequestHandler {
+public class HttpContinueRequestHandler extends CannedRequestHandler {
 
 	private final static HttpContinueRequestHandler instance = new HttpContinueRequestHandler();
 
 	private HttpContinueRequestHandler() {
+		super(new CannedResponse(HttpStatus.SUCCESS_CONTINUE, null, null));
 	}
 
 	public static final HttpContinueRequestHandler getInstance() {
 		return instance;
 	}
 
-	@Override
-	public void post(HttpRequest request, HttpResponse response) {
-		response.setStatus(HttpStatus.SUCCESS_CONTINUE);
-	}
-
-	@Override
-	public void put(HttpRequest request, HttpResponse response) {
-		response.setStatus(HttpStatus.SUCCESS_CONTINUE);
-	}
-
 }
@@ -0,0 +1,47 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package io.github.ilmich.tempesta.web.handler;
+
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.github.ilmich.tempesta.web.http.CannedResponse;
+import io.github.ilmich.tempesta.web.http.protocol.HttpStatus;
+
+/**
+ * Answer the requests for a path served for other verbs only, telling the
+ * verbs served in the "Allow" header
+ */
+public class MethodNotAllowedRequestHandler extends CannedRequestHandler {
+
+	public MethodNotAllowedRequestHandler(String allow) {
+		super(new CannedResponse(HttpStatus.CLIENT_ERROR_METHOD_NOT_ALLOWED, headers(allow),
+				"Method not allowed for the requested URL".getBytes(Charset.forName("ASCII")), true));
+	}
+
+	private static Map<String, String> headers(String allow) {
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		headers.put("Allow", allow);
+		headers.put("Content-Type", "text/plain");
+		return headers;
+	}
+
+}
@@ -21,6 +21,57 @@ package io.github.ilmich.tempesta.web.handler;
 
 public abstract class RequestHandler implements Cloneable {
 
+	/**
+	 * Whether this handler may block (e.g. waiting on disk, network or locks).
+	 * Non-blocking handlers are executed directly on the connector thread,
+	 * blocking ones are handed off to the worker executor.
+	 */
+	private boolean blocking = true;
+
+	/**
+	 * How instances of this handler are shared between requests
+	 */
+	private HandlerLifecycle lifecycle = HandlerLifecycle.SINGLETON;
+
+	/**
+	 * Determine whether this handler may block the calling thread.
+	 * 
+	 * @return <code>true</code> if the handler must run on a worker thread;
+	 *         <code>false</code> if it can run on the connector thread.
+	 */
+	public boolean isBlocking() {
+		return blocking;
+	}
+
+	/**
+	 * Set whether this handler may block the calling thread. Only handlers that
+	 * never block and complete quickly should be marked as non-blocking, since
+	 * they run on the same thread that serves every other connection.
+	 * 
+	 * @param blocking <code>false</code> to run the handler on the connector
+	 *                 thread.
+	 * @return <code>this</code>, for chaining.
+	 */
+	public RequestHandler setBlocking(boolean blocking) {
+		this.blocking = blocking;
+		return this;
+	}
+
+	public HandlerLifecycle getLifecycle() {
+		return lifecycle;
+	}
+
+	/**
+	 * Set how instances of this handler are shared between requests. Must be
+	 * set before the handler is routed.
+	 * 
+	 * @return <code>this</code>, for chaining.
+	 */
+	public RequestHandler setLifecycle(HandlerLifecycle lifecycle) {
+		this.lifecycle = lifecycle;
+		return this;
+	}
+
 	@Override
 	protected Object clone() throws CloneNotSupportedException {
 		return super.clone();
@@ -20,17 +20,31 @@
 package io.github.ilmich.tempesta.web.handler;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
-import javax.activation.MimetypesFileTypeMap;
-
+import io.github.ilmich.tempesta.io.BufferSegment;
 import io.github.ilmich.tempesta.util.DateUtil;
+import io.github.ilmich.tempesta.util.HttpUtil;
+import io.github.ilmich.tempesta.util.MimeFileTypeMapFactory;
+import io.github.ilmich.tempesta.web.cache.FileMetadata;
+import io.github.ilmich.tempesta.web.cache.FileMetadataCache;
+import io.github.ilmich.tempesta.web.cache.MappedFileCache;
+import io.github.ilmich.tempesta.web.cache.MappedFileCache.MappedFile;
+import io.github.ilmich.tempesta.web.cache.StaticContentCache;
+import io.github.ilmich.tempesta.web.http.ByteRange;
 import io.github.ilmich.tempesta.web.http.HttpException;
 import io.github.ilmich.tempesta.web.http.HttpRequest;
 import io.github.ilmich.tempesta.web.http.HttpRequestHandler;
 import io.github.ilmich.tempesta.web.http.HttpResponse;
+import io.github.ilmich.tempesta.web.http.HttpServerDescriptor;
 import io.github.ilmich.tempesta.web.http.Request;
-import io.github.ilmich.tempesta.web.http.Response;
 import io.github.ilmich.tempesta.web.http.protocol.HttpStatus;
 
 /**
@@ -46,18 +60,37 @@ public class StaticContentHandler extends HttpRequestHandler {
 
 	private final static StaticContentHandler instance = new StaticContentHandler();
 
-	private MimetypesFileTypeMap mimeTypeMap;
+	private final static Charset ASCII = Charset.forName("ASCII");
+
+	/**
+	 * The content codings of the precompressed variants, by preference, and
+	 * their file extensions
+	 */
+	private final static String[] ENCODINGS = { "br", "gzip" };
+
+	private final static String[] EXTENSIONS = { ".br", ".gz" };
+
+	/**
+	 * The directory requested paths are resolved against, <code>null</code> for
+	 * the working directory
+	 */
+	private final File root;
 
 	public static StaticContentHandler getInstance() {
 		return instance;
 	}
 
 	private StaticContentHandler() {
-		try {
-			mimeTypeMap = new MimetypesFileTypeMap("META-INF/mime.types");
-		} catch (IOException e) {
-			mimeTypeMap = new MimetypesFileTypeMap();
-		}
+		this(null);
+	}
+
+	/**
+	 * Create a handler serving the files under the given directory, e.g. with
+	 * root "/var/www" the path "/static/a.css" is served from
+	 * "/var/www/static/a.css". Paths escaping the root are refused.
+	 */
+	public StaticContentHandler(File root) {
+		this.root = root;
 	}
 
 	/** {inheritDoc} */
@@ -78,36 +111,298 @@ public class StaticContentHandler extends HttpRequestHandler {
 	 * @param hasBody  <code>true</code> to write the message body;
 	 *                 <code>false</code> otherwise.
 	 */
-	private void perform(final Request request, final Response response, boolean hasBody) {
+	private void perform(final HttpRequest request, final HttpResponse response, boolean hasBody) {
 
 		final String path = request.getRequestedPath();
-		final File file = new File(path.substring(1)); // remove the leading '/'
+		final File file = new File(root, path.substring(1)); // remove the leading '/'
+		String key = file.getPath();
 
-		if (!file.exists()) {
-			throw new HttpException(HttpStatus.CLIENT_ERROR_NOT_FOUND, "File not found");
-		} else if (!file.isFile()) {
-			throw new HttpException(HttpStatus.CLIENT_ERROR_FORBIDDEN, path + "is not a file");
+		FileMetadata metadata = getMetadata(key, file);
+		switch (metadata.getType()) {
+		case FileMetadata.MISSING:
+			NotFoundRequestHandler.getInstance().get(request, response);
+			return;
+		case FileMetadata.FORBIDDEN:
+			throw new HttpException(HttpStatus.CLIENT_ERROR_FORBIDDEN, path + " is not accessible");
+		case FileMetadata.NOT_A_FILE:
+			throw new HttpException(HttpStatus.CLIENT_ERROR_FORBIDDEN, path + " is not a file");
 		}
 
-		final long lastModified = file.lastModified();
-		response.setHeader("Last-Modified", DateUtil.parseToRFC1123(lastModified));
-		response.setHeader("Cache-Control", "public");
-		String mimeType = mimeTypeMap.getContentType(file);
-		if ("text/plain".equals(mimeType)) {
-			mimeType += "; charset=utf-8";
-		}
-		response.setHeader("Content-Type", mimeType);
-		final String ifModifiedSince = request.getHeader("If-Modified-Since");
-		if (ifModifiedSince != null) {
-			final long ims = DateUtil.parseToMilliseconds(ifModifiedSince);
-			if (lastModified <= ims) {
-				response.setStatus(HttpStatus.REDIRECTION_NOT_MODIFIED);
+		if (HttpServerDescriptor.STATIC_PRECOMPRESSED && HttpUtil.isCompressible(metadata.getContentType())) {
+			final String acceptEncoding = request.getHeader("Accept-Encoding");
+			FileMetadata variant = acceptEncoding != null ? getVariant(key, metadata, acceptEncoding) : null;
+			if (variant != null) {
+				key = key + ";" + variant.getEncoding();
+				metadata = variant;
+				response.setHeader("Content-Encoding", variant.getEncoding());
+			}
+			response.setHeader("Vary", "Accept-Encoding");
+		}
+
+		StaticContentCache.Entry entry = null;
+		StaticContentCache cache = CacheHolder.cache;
+		if (cache != null) {
+			entry = cache.get(key, metadata);
+			if (entry == null && cache.accepts(metadata)) {
+				entry = cache.put(key, metadata);
+			}
+		}
+
+		final MappedFile mapped = entry == null ? getMapping(key, metadata) : null;
+		try {
+			// ranges are only served to GET requests
+			final String range = hasBody ? request.getHeader("Range") : null;
+			if (range != null && !isNotModified(request, metadata)
+					&& isRangeValid(request, metadata)) {
+				long length = entry != null ? entry.getLength() : metadata.getLength();
+				List<ByteRange> ranges = ByteRange.parse(range, length);
+				if (ranges != null) {
+					performRanges(response, metadata, entry, mapped, length, ranges);
+					return;
+				}
+			}
+
+			if (entry != null) {
+				perform(request, response, hasBody, metadata, entry);
 				return;
 			}
+			perform(request, response, hasBody, metadata, mapped);
+		} finally {
+			if (mapped != null) {
+				mapped.release();
+			}
+		}
+	}
+
+	/**
+	 * Serve a file not in the in-memory cache, from its mapping when there is
+	 * one
+	 */
+	private void perform(final HttpRequest request, final HttpResponse response, boolean hasBody,
+			FileMetadata metadata, MappedFile mapped) {
+		response.setHeader("Last-Modified", DateUtil.parseToRFC1123(metadata.getLastModified()));
+		response.setHeader("Cache-Control", "public");
+		response.setHeader("Content-Type", metadata.getContentType());
+		response.setHeader("Etag", metadata.getEtag());
+		response.setHeader("Accept-Ranges", "bytes");
+		if (isNotModified(request, metadata)) {
+			response.setStatus(HttpStatus.REDIRECTION_NOT_MODIFIED);
+			return;
+		}
+
+		if (!hasBody) {
+			response.setHeader("Content-Length", String.valueOf(metadata.getLength()));
+		} else if (mapped != null) {
+			response.write(mapped.newSegment(0, mapped.getLength()));
+		} else {
+			response.write(metadata.getFile());
+		}
+	}
+
+	/**
+	 * Returns the mapping of the file with a reference to release, mapping it
+	 * once it is requested often enough, or <code>null</code> if it is not
+	 * served from a mapping
+	 */
+	private MappedFile getMapping(String key, FileMetadata metadata) {
+		MappedFileCache mappedCache = CacheHolder.mapped;
+		if (mappedCache == null || !mappedCache.accepts(metadata)) {
+			return null;
+		}
+		MappedFile mapped = mappedCache.get(key, metadata);
+		if (mapped == null && metadata.hit() >= HttpServerDescriptor.STATIC_MMAP_MIN_HITS) {
+			mapped = mappedCache.put(key, metadata);
+		}
+		return mapped;
+	}
+
+	/**
+	 * Returns the freshest precompressed variant of the file accepted by the
+	 * client, preferring brotli, or <code>null</code> if there is none. Variants
+	 * older than the file are ignored.
+	 */
+	private FileMetadata getVariant(String key, FileMetadata metadata, String acceptEncoding) {
+		for (int i = 0; i < ENCODINGS.length; i++) {
+			if (HttpUtil.acceptsEncoding(acceptEncoding, ENCODINGS[i])) {
+				File file = new File(metadata.getFile().getPath() + EXTENSIONS[i]);
+				FileMetadata variant = getMetadata(key + ";" + ENCODINGS[i], file, metadata.getContentType(),
+						ENCODINGS[i]);
+				if (variant.isFile() && variant.getLastModified() >= metadata.getLastModified()) {
+					return variant;
+				}
+			}
+		}
+		return null;
+	}
+
+	private FileMetadata getMetadata(String key, File file) {
+		return getMetadata(key, file, null, null);
+	}
+
+	/**
+	 * Look up the attributes of the file, from the metadata cache when enabled.
+	 * The root check is done only on a miss, cached entries were already
+	 * validated.
+	 * 
+	 * @param contentType the content type, <code>null</code> to derive it from
+	 *                    the file name
+	 * @param encoding    the content coding of the file, if any
+	 */
+	private FileMetadata getMetadata(String key, File file, String contentType, String encoding) {
+		FileMetadataCache metadataCache = CacheHolder.metadata;
+		FileMetadata metadata = metadataCache != null ? metadataCache.get(key) : null;
+		if (metadata != null) {
+			return metadata;
 		}
+		if (root != null && !isUnderRoot(file)) {
+			metadata = FileMetadata.forbidden(file);
+		} else if (file.isFile()) {
+			metadata = new FileMetadata(file, FileMetadata.FILE, file.length(), file.lastModified(),
+					contentType != null ? contentType : getContentType(file), encoding);
+		} else if (file.exists()) {
+			metadata = FileMetadata.notAFile(file);
+		} else {
+			metadata = FileMetadata.missing(file);
+		}
+		return metadataCache != null ? metadataCache.put(key, metadata) : metadata;
+	}
 
+	/**
+	 * Serve a cached file, the content is shared and not copied
+	 */
+	private void perform(final HttpRequest request, final HttpResponse response, boolean hasBody,
+			FileMetadata metadata, StaticContentCache.Entry entry) {
+		response.setRenderedHeaders(entry.getHeaders());
+		if (isNotModified(request, metadata)) {
+			response.setStatus(HttpStatus.REDIRECTION_NOT_MODIFIED);
+			return;
+		}
 		if (hasBody) {
-			response.write(file);
+			response.setContent(entry.getContent());
+		} else {
+			response.setHeader("Content-Length", String.valueOf(entry.getLength()));
+		}
+	}
+
+	/**
+	 * Answer with the requested ranges of the file: a single range is sent as
+	 * is, several ranges as a "multipart/byteranges" body. Cached files are
+	 * sent from memory, the others with offset-aware file regions.
+	 */
+	private void performRanges(final HttpResponse response, FileMetadata metadata, StaticContentCache.Entry entry,
+			MappedFile mapped, long length, List<ByteRange> ranges) {
+		response.setHeader("Last-Modified", DateUtil.parseToRFC1123(metadata.getLastModified()));
+		response.setHeader("Cache-Control", "public");
+		response.setHeader("Etag", metadata.getEtag());
+		response.setHeader("Accept-Ranges", "bytes");
+		if (ranges.isEmpty()) {
+			response.setStatus(HttpStatus.CLIENT_ERROR_REQUESTED_RANGE_NOT_SATISFIABLE);
+			response.setHeader("Content-Range", "bytes */" + length);
+			return;
+		}
+
+		FileChannel channel = null;
+		if (entry == null && mapped == null) {
+			try {
+				channel = new FileInputStream(metadata.getFile()).getChannel();
+			} catch (FileNotFoundException e) {
+				throw new HttpException(HttpStatus.CLIENT_ERROR_NOT_FOUND, "File not found");
+			}
+		}
+
+		response.setStatus(HttpStatus.SUCCESS_PARTIAL_CONTENT);
+		if (ranges.size() == 1) {
+			ByteRange r = ranges.get(0);
+			response.setHeader("Content-Type", metadata.getContentType());
+			response.setHeader("Content-Range", r.toContentRange(length));
+			writeRange(response, entry, mapped, channel, r);
+			return;
+		}
+
+		final String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+		response.setHeader("Content-Type", "multipart/byteranges; boundary=" + boundary);
+		for (ByteRange r : ranges) {
+			String part = "\r\n--" + boundary + "\r\nContent-Type: " + metadata.getContentType()
+					+ "\r\nContent-Range: " + r.toContentRange(length) + "\r\n\r\n";
+			response.write(new BufferSegment(ByteBuffer.wrap(part.getBytes(ASCII))));
+			writeRange(response, entry, mapped, channel, r);
+		}
+		response.write(new BufferSegment(ByteBuffer.wrap(("\r\n--" + boundary + "--\r\n").getBytes(ASCII))));
+	}
+
+	private void writeRange(HttpResponse response, StaticContentCache.Entry entry, MappedFile mapped,
+			FileChannel channel, ByteRange range) {
+		if (entry != null) {
+			ByteBuffer content = entry.getContent();
+			content.position((int) range.getFirst());
+			content.limit((int) range.getLast() + 1);
+			response.write(new BufferSegment(content));
+		} else if (mapped != null) {
+			response.write(mapped.newSegment(range.getFirst(), range.getLength()));
+		} else {
+			response.write(channel, range.getFirst(), range.getLength());
 		}
 	}
+
+	/**
+	 * Returns <code>true</code> if the ranges can be served: there is no
+	 * "If-Range" header, or it matches the current entity tag or modification
+	 * date exactly
+	 */
+	private boolean isRangeValid(final Request request, FileMetadata metadata) {
+		String ifRange = request.getHeader("If-Range");
+		if (ifRange == null) {
+			return true;
+		}
+		ifRange = ifRange.trim();
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			// weak tags never match
+			return ifRange.equals(metadata.getEtag());
+		}
+		return DateUtil.parseToMilliseconds(ifRange) / 1000 == metadata.getLastModified() / 1000;
+	}
+
+	private boolean isNotModified(final Request request, FileMetadata metadata) {
+		return HttpUtil.isNotModified(request.getHeader("If-None-Match"), request.getHeader("If-Modified-Since"),
+				metadata.getEtag(), metadata.getLastModified());
+	}
+
+	String getContentType(File file) {
+		return getContentType(file.getName());
+	}
+
+	String getContentType(String fileName) {
+		return MimeFileTypeMapFactory.getInstance().getContentType(fileName);
+	}
+
+	private boolean isUnderRoot(File file) {
+		try {
+			String rootPath = root.getCanonicalPath() + File.separator;
+			return file.getCanonicalPath().startsWith(rootPath);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * The caches shared by all the handlers, created on first use so that they
+	 * pick up the {@link HttpServerDescriptor} settings
+	 */
+	private static class CacheHolder {
+
+		private static final FileMetadataCache metadata = HttpServerDescriptor.STATIC_METADATA_CACHE_SIZE > 0
+				? new FileMetadataCache("static", HttpServerDescriptor.STATIC_METADATA_CACHE_SIZE,
+						HttpServerDescriptor.STATIC_NEGATIVE_TTL, HttpServerDescriptor.STATIC_CACHE_CHECK_INTERVAL)
+				: null;
+
+		private static final StaticContentCache cache = HttpServerDescriptor.STATIC_CACHE_SIZE > 0
+				? new StaticContentCache("static", HttpServerDescriptor.STATIC_CACHE_SIZE,
+						HttpServerDescriptor.STATIC_CACHE_MAX_FILE_SIZE)
+				: null;
+
+		private static final MappedFileCache mapped = HttpServerDescriptor.STATIC_MMAP_SIZE > 0
+				? new MappedFileCache("static", HttpServerDescriptor.STATIC_MMAP_SIZE,
+						HttpServerDescriptor.STATIC_MMAP_MIN_FILE_SIZE)
+				: null;
+	}
 }
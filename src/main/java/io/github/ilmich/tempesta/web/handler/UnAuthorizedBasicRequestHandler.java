@@ -33,6 +33,7 @@ public class UnAuthorizedBasicRequestHandler extends HttpRequestHandler {
 	public UnAuthorizedBasicRequestHandler(String realm) {
 		super();
 		this.realm = realm;
+		setBlocking(false);
 	}
 
 	public String getRealm() {
@@ -0,0 +1,33 @@
+package io.github.ilmich.tempesta.web.http;
+
+/**
+ * A filter made of a pre hook, which can short-circuit the request, and a post
+ * hook, run once the handler and the next filters have completed.
+ */
+public abstract class AbstractHttpFilter implements HttpFilter {
+
+	@Override
+	public void doFilter(HttpRequest request, HttpResponse response, FilterChain chain) {
+		if (before(request, response)) {
+			chain.proceed(request, response);
+			after(request, response);
+		}
+	}
+
+	/**
+	 * Called before the handler
+	 * 
+	 * @return <code>false</code> to stop handling the request, the response
+	 *         being the one written by this method
+	 */
+	protected boolean before(HttpRequest request, HttpResponse response) {
+		return true;
+	}
+
+	/**
+	 * Called after the handler, when the request was not short-circuited
+	 */
+	protected void after(HttpRequest request, HttpResponse response) {
+	}
+
+}
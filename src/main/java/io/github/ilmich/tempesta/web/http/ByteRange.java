@@ -0,0 +1,150 @@
+package io.github.ilmich.tempesta.web.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A range of bytes asked with the "Range" header (RFC 7233), both ends
+ * included
+ */
+public class ByteRange {
+
+	private static final String UNIT = "bytes=";
+
+	private final long first;
+
+	private final long last;
+
+	public ByteRange(long first, long last) {
+		this.first = first;
+		this.last = last;
+	}
+
+	public long getFirst() {
+		return first;
+	}
+
+	public long getLast() {
+		return last;
+	}
+
+	public long getLength() {
+		return last - first + 1;
+	}
+
+	/**
+	 * Returns the value of the "Content-Range" header sending this range of a
+	 * representation of the given length
+	 */
+	public String toContentRange(long length) {
+		return "bytes " + first + "-" + last + "/" + length;
+	}
+
+	/**
+	 * Parse the value of a "Range" header against a representation of the given
+	 * length.
+	 * 
+	 * @return the satisfiable ranges sorted, overlapping or adjacent ranges
+	 *         merged, an empty list if none is satisfiable, or <code>null</code>
+	 *         if the header is not a valid byte range set, asks for more than
+	 *         {@link HttpServerDescriptor#MAX_BYTE_RANGES} ranges or for more
+	 *         bytes than the representation has (RFC 7233 section 6.1), and
+	 *         must be ignored
+	 */
+	public static List<ByteRange> parse(String header, long length) {
+		if (!header.regionMatches(true, 0, UNIT, 0, UNIT.length())) {
+			return null;
+		}
+		String[] specs = header.substring(UNIT.length()).split(",");
+		if (specs.length > HttpServerDescriptor.MAX_BYTE_RANGES) {
+			return null;
+		}
+		List<ByteRange> ranges = new ArrayList<ByteRange>(specs.length);
+		boolean valid = false;
+		try {
+			for (String spec : specs) {
+				spec = spec.trim();
+				if (spec.isEmpty()) {
+					continue;
+				}
+				int dash = spec.indexOf('-');
+				if (dash < 0) {
+					return null;
+				}
+				valid = true;
+				String start = spec.substring(0, dash).trim();
+				String end = spec.substring(dash + 1).trim();
+				if (start.isEmpty()) { // suffix range, the last bytes
+					long suffix = parseNumber(end);
+					if (suffix > 0 && length > 0) {
+						ranges.add(new ByteRange(Math.max(0, length - suffix), length - 1));
+					}
+					continue;
+				}
+				long first = parseNumber(start);
+				long last = length - 1;
+				if (!end.isEmpty()) {
+					last = parseNumber(end);
+					if (last < first) {
+						return null;
+					}
+				}
+				if (first < length) {
+					ranges.add(new ByteRange(first, Math.min(last, length - 1)));
+				}
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		if (!valid) {
+			return null;
+		}
+		return ranges.isEmpty() ? Collections.<ByteRange>emptyList() : coalesce(ranges, length);
+	}
+
+	/**
+	 * Sort and merge the given ranges, or return <code>null</code> if they add
+	 * up to more than the length, e.g. the same range asked many times
+	 */
+	private static List<ByteRange> coalesce(List<ByteRange> ranges, long length) {
+		long total = 0;
+		for (ByteRange range : ranges) {
+			total += range.getLength();
+		}
+		if (total > length) {
+			return null;
+		}
+		Collections.sort(ranges, new Comparator<ByteRange>() {
+
+			@Override
+			public int compare(ByteRange a, ByteRange b) {
+				return a.first < b.first ? -1 : (a.first == b.first ? 0 : 1);
+			}
+		});
+		List<ByteRange> merged = new ArrayList<ByteRange>(ranges.size());
+		ByteRange current = ranges.get(0);
+		for (int i = 1; i < ranges.size(); i++) {
+			ByteRange next = ranges.get(i);
+			if (next.first <= current.last + 1) {
+				current = new ByteRange(current.first, Math.max(current.last, next.last));
+			} else {
+				merged.add(current);
+				current = next;
+			}
+		}
+		merged.add(current);
+		return merged;
+	}
+
+	private static long parseNumber(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+				throw new NumberFormatException(value);
+			}
+		}
+		return Long.parseLong(value);
+	}
+
+}
@@ -0,0 +1,189 @@
+package io.github.ilmich.tempesta.web.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.github.ilmich.tempesta.util.DateUtil;
+import io.github.ilmich.tempesta.web.http.protocol.HttpStatus;
+
+/**
+ * An immutable response encoded once, e.g. an error page or the answer of a
+ * health check. Sending it allocates no headers map and formats nothing: the
+ * encoded head is shared by all the responses of the same second, only its
+ * "Date" header is rendered again when the date changes.
+ */
+public class CannedResponse {
+
+	private static final Charset ASCII = Charset.forName("ASCII");
+
+	/**
+	 * Canned responses of the error statuses, built on first use
+	 */
+	private static final Map<HttpStatus, CannedResponse> errors = new ConcurrentHashMap<HttpStatus, CannedResponse>();
+
+	private final HttpStatus status;
+
+	/**
+	 * The header lines added by this response, e.g. "Content-Type: ...\r\n"
+	 */
+	private final byte[] headers;
+
+	private final ByteBuffer body;
+
+	private final boolean close;
+
+	/**
+	 * Status line and headers up to the date, headers following it
+	 */
+	private final byte[] beforeDate;
+	private final byte[] keepAliveAfterDate;
+	private final byte[] closeAfterDate;
+
+	private volatile Heads heads;
+
+	/**
+	 * @param status      the status of the response
+	 * @param contentType the content type of the body, <code>null</code> if none
+	 * @param body        the body, <code>null</code> if none
+	 */
+	public CannedResponse(HttpStatus status, String contentType, byte[] body) {
+		this(status, contentType, body, false);
+	}
+
+	/**
+	 * @param status      the status of the response
+	 * @param contentType the content type of the body, <code>null</code> if none
+	 * @param body        the body, <code>null</code> if none
+	 * @param close       <code>true</code> to close the connection once the
+	 *                    response is sent, e.g. after an error
+	 */
+	public CannedResponse(HttpStatus status, String contentType, byte[] body, boolean close) {
+		this(status, contentType != null ? Collections.singletonMap("Content-Type", contentType)
+				: Collections.<String, String>emptyMap(), body, close);
+	}
+
+	/**
+	 * @param status  the status of the response
+	 * @param headers the headers of the response, e.g. "Content-Type" or
+	 *                "Allow"
+	 * @param body    the body, <code>null</code> if none
+	 * @param close   <code>true</code> to close the connection once the
+	 *                response is sent, e.g. after an error
+	 */
+	public CannedResponse(HttpStatus status, Map<String, String> headers, byte[] body, boolean close) {
+		StringBuilder lines = new StringBuilder();
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			lines.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+		}
+		this.status = status;
+		this.headers = lines.toString().getBytes(ASCII);
+		this.body = body != null ? ByteBuffer.wrap(body.clone()).asReadOnlyBuffer() : null;
+		this.close = close;
+		String length = body != null ? "Content-Length: " + body.length + "\r\n" : "";
+		String after = "\r\nServer: " + HttpProtocol.SERVER + "\r\n" + length + lines;
+		beforeDate = (status.line() + "Date: ").getBytes(ASCII);
+		keepAliveAfterDate = (after + "Connection: Keep-Alive\r\n\r\n").getBytes(ASCII);
+		closeAfterDate = (after + "Connection: close\r\n\r\n").getBytes(ASCII);
+	}
+
+	/**
+	 * Returns the canned response of the given status, whose body is the status
+	 * code and reason, e.g. "404 Not Found"
+	 */
+	public static CannedResponse forStatus(HttpStatus status) {
+		CannedResponse response = errors.get(status);
+		if (response == null) {
+			String line = status.line();
+			byte[] body = line.substring(line.indexOf(' ') + 1, line.length() - 2).getBytes(ASCII);
+			response = new CannedResponse(status, "text/plain", body);
+			errors.put(status, response);
+		}
+		return response;
+	}
+
+	public HttpStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns <code>true</code> if the connection is closed once the response is
+	 * sent
+	 */
+	public boolean isClose() {
+		return close;
+	}
+
+	/**
+	 * Returns a response to send as is, sharing the encoded bytes
+	 *
+	 * @param keepAlive whether the request asked to keep the connection open
+	 * @param hasBody   <code>false</code> to leave the body out, e.g. for HEAD
+	 */
+	public Response newResponse(boolean keepAlive, boolean hasBody) {
+		keepAlive = keepAlive && !close;
+		Heads current = getHeads();
+		ByteBuffer head = ByteBuffer.wrap(keepAlive ? current.keepAlive : current.close);
+		return new RenderedResponse(head, hasBody && body != null ? body.duplicate() : null, keepAlive, null);
+	}
+
+	/**
+	 * Write this response in the given one, e.g. when filters must see it. The
+	 * body is shared, not copied.
+	 *
+	 * @param hasBody <code>false</code> to leave the body out, e.g. for HEAD
+	 */
+	public void apply(HttpResponse response, boolean hasBody) {
+		response.setStatus(status);
+		if (close) {
+			response.setKeepAlive(false);
+		}
+		response.setRenderedHeaders(headers);
+		if (body == null) {
+			return;
+		}
+		if (hasBody) {
+			response.setContent(body.duplicate());
+		} else {
+			response.setHeader("Content-Length", String.valueOf(body.remaining()));
+		}
+	}
+
+	/**
+	 * Returns the heads of the current second, rendered again once the date
+	 * has changed
+	 */
+	private Heads getHeads() {
+		byte[] date = DateUtil.getCurrentAsBytes();
+		Heads current = heads;
+		if (current == null || current.date != date) {
+			current = new Heads(date, render(date, keepAliveAfterDate), render(date, closeAfterDate));
+			heads = current;
+		}
+		return current;
+	}
+
+	private byte[] render(byte[] date, byte[] afterDate) {
+		byte[] head = new byte[beforeDate.length + date.length + afterDate.length];
+		System.arraycopy(beforeDate, 0, head, 0, beforeDate.length);
+		System.arraycopy(date, 0, head, beforeDate.length, date.length);
+		System.arraycopy(afterDate, 0, head, beforeDate.length + date.length, afterDate.length);
+		return head;
+	}
+
+	private static class Heads {
+
+		private final byte[] date;
+		private final byte[] keepAlive;
+		private final byte[] close;
+
+		private Heads(byte[] date, byte[] keepAlive, byte[] close) {
+			this.date = date;
+			this.keepAlive = keepAlive;
+			this.close = close;
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+package io.github.ilmich.tempesta.web.http;
+
+import io.github.ilmich.tempesta.web.http.router.Route;
+
+/**
+ * An immutable chain of filters ending with the request handler.
+ * <p>
+ * Chains are built once per route, when routes or filters change, and shared
+ * by all the requests to the route: the position of a request in the chain is
+ * kept in the request itself, so that walking the chain allocates nothing.
+ */
+public final class FilterChain {
+
+	public static final FilterChain EMPTY = new FilterChain(new HttpFilter[0]);
+
+	private static final HttpRequestDispatcher dispatcher = new HttpRequestDispatcher();
+
+	private final HttpFilter[] filters;
+
+	public FilterChain(HttpFilter[] filters) {
+		this.filters = filters;
+	}
+
+	/**
+	 * Invoke the next filter of the chain, or the request handler if all the
+	 * filters have been invoked
+	 */
+	public void proceed(HttpRequest request, HttpResponse response) {
+		int next = request.nextFilter();
+		if (next < filters.length) {
+			filters[next].doFilter(request, response, this);
+		} else {
+			HttpRequestHandler handler = request.getHandler();
+			Route route = request.getRoute();
+			if (route != null && route.isHandlerConfined() && handler == route.getHandler()) {
+				HttpRequestHandler instance = route.acquireHandler();
+				try {
+					dispatcher.dispatch(instance, request, response);
+				} finally {
+					route.releaseHandler(instance);
+				}
+			} else {
+				dispatcher.dispatch(handler, request, response);
+			}
+		}
+	}
+
+	public int size() {
+		return filters.length;
+	}
+
+}
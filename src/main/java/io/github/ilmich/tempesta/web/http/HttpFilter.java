@@ -0,0 +1,22 @@
+package io.github.ilmich.tempesta.web.http;
+
+/**
+ * A filter wrapping the handling of requests, for cross-cutting concerns like
+ * authentication, CORS, headers or metrics.
+ * <p>
+ * Filters are shared between requests and threads, and must be thread safe.
+ * 
+ * @see AbstractHttpFilter for simple pre and post hooks
+ */
+public interface HttpFilter {
+
+	/**
+	 * Filter the given request. Call
+	 * {@link FilterChain#proceed(HttpRequest, HttpResponse)} to invoke the next
+	 * filter and finally the handler, work can be done before and after that
+	 * call. Not calling it short-circuits the request, the response being the
+	 * one written by this filter.
+	 */
+	void doFilter(HttpRequest request, HttpResponse response, FilterChain chain);
+
+}
@@ -1,41 +1,55 @@
 package io.github.ilmich.tempesta.web.http;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.github.ilmich.tempesta.configuration.Configuration;
 import io.github.ilmich.tempesta.util.HttpUtil;
+import io.github.ilmich.tempesta.util.Log;
+import io.github.ilmich.tempesta.util.MXBeanUtil;
+import io.github.ilmich.tempesta.web.cache.ResponseCache;
 import io.github.ilmich.tempesta.web.handler.BadRequestRequestHandler;
 import io.github.ilmich.tempesta.web.handler.HandlerFactory;
 import io.github.ilmich.tempesta.web.handler.HttpContinueRequestHandler;
 import io.github.ilmich.tempesta.web.handler.NotFoundRequestHandler;
 import io.github.ilmich.tempesta.web.handler.RequestHandler;
-import io.github.ilmich.tempesta.web.handler.StaticContentHandler;
+import io.github.ilmich.tempesta.web.http.protocol.HttpVerb;
+import io.github.ilmich.tempesta.web.http.router.Route;
+import io.github.ilmich.tempesta.web.http.router.RouteIndex;
+import io.github.ilmich.tempesta.web.http.router.RouteProvider;
+import io.github.ilmich.tempesta.web.http.router.RouteTable;
+import io.github.ilmich.tempesta.web.http.router.Router;
+import io.github.ilmich.tempesta.web.http.router.VirtualHost;
 
-public class HttpHandlerFactory implements HandlerFactory {
+public class HttpHandlerFactory implements HandlerFactory, HttpHandlerFactoryMXBean {
 
-	/**
-	 * "Normal/Absolute" (non group capturing) RequestHandlers e.g. "/", "/persons"
-	 */
-	private Map<String, HttpRequestHandler> absoluteHandlers = new HashMap<String, HttpRequestHandler>();
+	private static final String TAG = "HttpHandlerFactory";
+
+	private static final AtomicInteger sequence = new AtomicInteger();
 
 	/**
-	 * Group capturing RequestHandlers e.g. "/persons/([0-9]+)",
-	 * "/persons/(\\d{1,3})"
+	 * The published routes. Requests read the current snapshot without
+	 * locking, changes build a new snapshot and publish it while holding the
+	 * lock on this factory.
 	 */
-	private Map<String, HttpRequestHandler> capturingHandlers = new HashMap<String, HttpRequestHandler>();
+	private volatile RouteTable routes = new RouteTable();
+
+	private RouteProvider provider = null;
 
 	/**
-	 * A mapping between group capturing RequestHandlers and their corresponding
-	 * pattern ( e.g. "([0-9]+)" )
+	 * The registered filters, in order
 	 */
-	private Map<HttpRequestHandler, Pattern> patterns = new HashMap<HttpRequestHandler, Pattern>();
+	private final List<FilterMapping> filters = new ArrayList<FilterMapping>();
 
 	/**
-	 * The directory where static content (files) will be served from.
+	 * The filters run for requests not matching any route (static content, not
+	 * found...)
 	 */
-	private String staticContentDir;
+	private volatile FilterChain defaultChain = FilterChain.EMPTY;
 
 	/**
 	 * A copy of the <code>Configuration</code> used to create this type.
@@ -44,61 +58,268 @@ public class HttpHandlerFactory implements HandlerFactory {
 
 	public HttpHandlerFactory() {
 		super();
+		MXBeanUtil.registerMXBean(this, "Router", "routes-" + sequence.incrementAndGet());
 	}
 
 	public HttpHandlerFactory(Configuration conf) {
+		this();
 
-		/*if (!Strings.isNullOrEmpty(conf.getHandlerPackage()))
-			conf.addHandlers(new AnnotationsScanner().findHandlers(conf.getHandlerPackage()));*/
-
+		VirtualHost host = new VirtualHost(RouteTable.DEFAULT_HOST);
+		if (!conf.getHandlerPackage().isEmpty()) {
+			addRouteIndexes(host, conf.getHandlerPackage());
+		}
 		for (String path : conf.getHandlerMap().keySet()) {
-			addRoute(path, conf.getHandlerMap().get(path));
+			host.addRoute(path, conf.getHandlerMap().get(path));
 		}
+		host.setStaticContentDir(conf.getStaticDirectory());
+		routes = routes.withHost(compile(host));
+	}
 
-		staticContentDir = conf.getStaticDirectory();
+	/**
+	 * Add to the default host the routes of the handlers annotated with
+	 * {@link io.github.ilmich.tempesta.web.annotation.Path} in the given package
+	 * and its subpackages, as indexed at build time.
+	 */
+	public synchronized HttpHandlerFactory addRouteIndexes(String handlerPackage) {
+		VirtualHost host = new VirtualHost(routes.getDefaultHost());
+		addRouteIndexes(host, handlerPackage);
+		publish(routes.withHost(compile(host)));
+		return this;
 	}
 
-	public HttpHandlerFactory addRoute(String path, HttpRequestHandler handler) {
-		int index = path.lastIndexOf("/");
-		String group = path.substring(index + 1, path.length());
-		if (containsCapturingGroup(group)) {
-			// path ends with capturing group, e.g path ==
-			// "/person/([0-9]+)"
-			capturingHandlers.put(path.substring(0, index + 1), handler);
-			patterns.put(handler, Pattern.compile(group));
-		} else {
-			// "normal" path, e.g. path == "/"
-			absoluteHandlers.put(path, handler);
+	private static void addRouteIndexes(VirtualHost host, String handlerPackage) {
+		for (RouteIndex index : ServiceLoader.load(RouteIndex.class)) {
+			String pkg = index.getPackage();
+			if (pkg.equals(handlerPackage) || pkg.startsWith(handlerPackage + ".")) {
+				index.addRoutes(host);
+				Log.debug(TAG, "Loaded routes of package " + pkg);
+			}
 		}
+	}
+
+	/**
+	 * Add a route served by the given handler for every verb.
+	 * 
+	 * @see Route for the path syntax
+	 */
+	public HttpHandlerFactory addRoute(String path, HttpRequestHandler handler) {
+		return addRoute(null, path, handler, null);
+	}
+
+	/**
+	 * Add a route whose handler runs on its own executor, so that a slow route
+	 * cannot starve the others by draining the shared one.
+	 */
+	public HttpHandlerFactory addRoute(String path, HttpRequestHandler handler, ExecutorService executor) {
+		return addRoute(null, path, handler, executor);
+	}
+
+	/**
+	 * Add a route served by the given handler for the given verb only. Requests
+	 * to the same path with a verb no route serves are answered with 405.
+	 */
+	public HttpHandlerFactory addRoute(HttpVerb verb, String path, HttpRequestHandler handler) {
+		return addRoute(verb, path, handler, null);
+	}
+
+	/**
+	 * Add a route to the default host. Can be called while serving requests: the
+	 * route is visible to the requests parsed after this method returns.
+	 */
+	public HttpHandlerFactory addRoute(HttpVerb verb, String path, HttpRequestHandler handler,
+			ExecutorService executor) {
+		return addRoute(verb, path, handler, executor, null);
+	}
+
+	/**
+	 * Add a route to the default host, whose responses are cached in the given
+	 * cache (<code>null</code> for none).
+	 */
+	public synchronized HttpHandlerFactory addRoute(HttpVerb verb, String path, HttpRequestHandler handler,
+			ExecutorService executor, ResponseCache cache) {
+		VirtualHost host = new VirtualHost(routes.getDefaultHost());
+		host.addRoute(verb, path, handler, executor, cache);
+		publish(routes.withHost(compile(host)));
 		return this;
 	}
 
 	/**
+	 * Remove a route from the default host.
 	 * 
-	 * @param path Requested path
-	 * @return Returns the {@link RequestHandler} associated with the given path. If
-	 *         no mapping exists a {@link NotFoundRequestHandler} is returned.
+	 * @return true if the route was found
 	 */
-	private HttpRequestHandler getHandler(String path) {
+	public boolean removeRoute(HttpVerb verb, String path) {
+		return removeRoute(RouteTable.DEFAULT_HOST, verb, path);
+	}
 
-		HttpRequestHandler rh = absoluteHandlers.get(path);
-		if (rh == null) {
-			rh = getCapturingHandler(path);
-			if (rh == null) {
-				rh = getStaticContentHandler(path);
-				if (rh != null) {
-					return rh;
-				}
+	/**
+	 * Remove a route from the given host.
+	 * 
+	 * @param hostName the host name, {@link RouteTable#DEFAULT_HOST} for the
+	 *                 default host
+	 * @param verb     the verb of the route, <code>null</code> for the route
+	 *                 serving any verb
+	 * @param path     the path pattern of the route
+	 * @return true if the route was found
+	 */
+	public synchronized boolean removeRoute(String hostName, HttpVerb verb, String path) {
+		VirtualHost current = routes.getHost(hostName);
+		if (current == null) {
+			return false;
+		}
+		VirtualHost host = new VirtualHost(current);
+		if (!host.removeRoute(verb, path)) {
+			return false;
+		}
+		publish(routes.withHost(host));
+		return true;
+	}
+
+	/**
+	 * Add a virtual host, whose routes and static content are served in place
+	 * of the default ones for requests to that host. Adding a host with the
+	 * same name replaces the previous one.
+	 * <p>
+	 * The host is copied: changes made to it afterwards are not served, add it
+	 * again to publish them.
+	 */
+	public synchronized HttpHandlerFactory addVirtualHost(VirtualHost host) {
+		publish(routes.withHost(compile(host)));
+		return this;
+	}
+
+	public synchronized boolean removeVirtualHost(String name) {
+		if (routes.getHost(name) == null || RouteTable.DEFAULT_HOST.equals(name)) {
+			return false;
+		}
+		publish(routes.withoutHost(name));
+		return true;
+	}
+
+	/**
+	 * Replace all the virtual hosts at once. A host named
+	 * {@link RouteTable#DEFAULT_HOST} replaces the default host, otherwise the
+	 * current default host is kept.
+	 */
+	public synchronized HttpHandlerFactory setVirtualHosts(Collection<VirtualHost> hosts) {
+		VirtualHost defaultHost = routes.getDefaultHost();
+		List<VirtualHost> virtualHosts = new ArrayList<VirtualHost>();
+		for (VirtualHost host : hosts) {
+			if (RouteTable.DEFAULT_HOST.equals(host.getName())) {
+				defaultHost = compile(host);
 			} else {
-				return rh;
-				//return (rh.isSingleton()) ? rh : RequestHandlerFactory.cloneHandler(rh);
+				virtualHosts.add(compile(host));
 			}
-		} else {
-			return rh;
-			//return (rh.isSingleton()) ? rh : RequestHandlerFactory.cloneHandler(rh);
 		}
+		publish(new RouteTable(defaultHost, virtualHosts, routes.getVersion() + 1));
+		return this;
+	}
+
+	/**
+	 * Add a filter run for all the requests, after the filters already added
+	 */
+	public HttpHandlerFactory addFilter(HttpFilter filter) {
+		return addFilter(null, filter);
+	}
+
+	/**
+	 * Add a filter run for the requests matching a route whose path pattern
+	 * starts with the given prefix, e.g. "/api/", after the filters already
+	 * added.
+	 */
+	public synchronized HttpHandlerFactory addFilter(String pathPrefix, HttpFilter filter) {
+		filters.add(new FilterMapping(pathPrefix, filter));
+		defaultChain = buildChain(null);
+		RouteTable table = routes;
+		List<VirtualHost> virtualHosts = new ArrayList<VirtualHost>();
+		for (VirtualHost host : table.getVirtualHosts()) {
+			virtualHosts.add(compile(host));
+		}
+		publish(new RouteTable(compile(table.getDefaultHost()), virtualHosts, table.getVersion() + 1));
+		return this;
+	}
+
+	/**
+	 * Set the provider queried by {@link #reload()}
+	 */
+	public synchronized HttpHandlerFactory setRouteProvider(RouteProvider provider) {
+		this.provider = provider;
+		return this;
+	}
 
-		return NotFoundRequestHandler.getInstance();
+	/**
+	 * Replace the routes with the ones of the route provider, while serving
+	 * requests: connections are kept open, requests being served complete with
+	 * the routes they matched.
+	 * 
+	 * @throws IllegalStateException if no route provider is set
+	 */
+	public synchronized void reload() {
+		if (provider == null) {
+			throw new IllegalStateException("No route provider set");
+		}
+		setVirtualHosts(provider.getVirtualHosts());
+	}
+
+	/**
+	 * Returns the current routes snapshot
+	 */
+	public RouteTable getRouteTable() {
+		return routes;
+	}
+
+	/**
+	 * Returns a copy of the given host whose routes are wrapped by their filter
+	 * chain: published routes are never changed, requests being served keep the
+	 * chain of the route they matched
+	 */
+	private VirtualHost compile(VirtualHost host) {
+		List<Route> compiled = new ArrayList<Route>();
+		for (Route route : host.getRoutes()) {
+			compiled.add(new Route(route, buildChain(route)));
+		}
+		return new VirtualHost(host, compiled);
+	}
+
+	private FilterChain buildChain(Route route) {
+		List<HttpFilter> chain = new ArrayList<HttpFilter>();
+		for (FilterMapping mapping : filters) {
+			if (mapping.prefix == null || (route != null && route.getPath().startsWith(mapping.prefix))) {
+				chain.add(mapping.filter);
+			}
+		}
+		return chain.isEmpty() ? FilterChain.EMPTY : new FilterChain(chain.toArray(new HttpFilter[chain.size()]));
+	}
+
+	private void publish(RouteTable table) {
+		routes = table;
+		Log.debug(TAG, "Published routes version " + table.getVersion());
+	}
+
+	public ExecutorService getExecutor(Request request) {
+		Route route = ((HttpRequest) request).getRoute();
+		return route != null ? route.getExecutor() : null;
+	}
+
+	public ResponseCache getResponseCache(Request request) {
+		Route route = ((HttpRequest) request).getRoute();
+		return route != null ? route.getResponseCache() : null;
+	}
+
+	/**
+	 * Returns the filter chain of the given request, read once: the request is
+	 * filtered by the same chain until it is answered, even if filters are
+	 * added meanwhile
+	 */
+	public FilterChain getFilterChain(Request request) {
+		HttpRequest req = (HttpRequest) request;
+		FilterChain chain = req.getFilterChain();
+		if (chain == null) {
+			Route route = req.getRoute();
+			chain = route != null ? route.getFilterChain() : defaultChain;
+			req.setFilterChain(chain);
+		}
+		return chain;
 	}
 
 	public RequestHandler getHandler(Request request) {
@@ -106,10 +327,24 @@ public class HttpHandlerFactory implements HandlerFactory {
 		if (!HttpUtil.verifyRequest(request)) {
 			return BadRequestRequestHandler.getInstance();
 		}
-		// if @Authenticated annotation is present, make sure that the
-		// request/user is authenticated
-		// (i.e RequestHandler.getCurrentUser() != null).
-		HttpRequestHandler rh = getHandler(request.getRequestedPath());
+
+		HttpRequestHandler rh = null;
+		VirtualHost host = routes.match(request.getHeader("host"));
+		Router router = host.getRouter();
+		String path = request.getRequestedPath();
+		String[] values = router.getMaxParameters() > 0 ? new String[router.getMaxParameters()] : null;
+		Route route = router.find(request.getMethod(), path, values);
+		HttpRequest req = (HttpRequest) request;
+		req.setFilterChain(route != null ? route.getFilterChain() : defaultChain);
+		if (route != null) {
+			req.setRoute(route);
+			if (route.getParameterNames().length > 0) {
+				req.setPathParameters(route.getParameterNames(), values);
+			}
+			rh = route.getHandler();
+		} else {
+			rh = host.getStaticContentHandler(path);
+		}
 		if (rh == null) {
 			return NotFoundRequestHandler.getInstance();
 		}
@@ -121,44 +356,53 @@ public class HttpHandlerFactory implements HandlerFactory {
 		return rh;
 	}
 
-	private static boolean containsCapturingGroup(String group) {
-		boolean containsGroup = group.matches("^\\(.*\\)$");
-		Pattern.compile(group); // throws PatternSyntaxException if group is
-		// malformed regular expression
-		return containsGroup;
-	}
-
-	private HttpRequestHandler getCapturingHandler(String path) {
-		int index = path.lastIndexOf("/");
-		if (index != -1) {
-			String init = path.substring(0, index + 1); // path without its last
-			// segment
-			String group = path.substring(index + 1, path.length());
-			HttpRequestHandler handler = capturingHandlers.get(init);
-			if (handler != null) {
-				Pattern regex = patterns.get(handler);
-				if (regex.matcher(group).matches()) {
-					return handler;
-				}
-			}
-		}
-		return null;
+	protected HttpRequestHandler getStaticContentHandler(String path) {
+		return routes.getDefaultHost().getStaticContentHandler(path);
 	}
 
-	protected HttpRequestHandler getStaticContentHandler(String path) {
-		if (staticContentDir == null || path.length() <= staticContentDir.length()) {
-			return null; // quick reject (no static dir or simple contradiction)
+	synchronized void setStaticContentDir(String scd) {
+		VirtualHost host = new VirtualHost(routes.getDefaultHost());
+		host.setStaticContentDir(scd);
+		publish(routes.withHost(host));
+	}
+
+	// implements HttpHandlerFactoryMXBean
+
+	@Override
+	public long getVersion() {
+		return routes.getVersion();
+	}
+
+	@Override
+	public String[] getRoutes() {
+		RouteTable table = routes;
+		List<String> result = new ArrayList<String>();
+		for (Route route : table.getDefaultHost().getRoutes()) {
+			result.add(RouteTable.DEFAULT_HOST + " " + route);
+		}
+		for (VirtualHost host : table.getVirtualHosts()) {
+			for (Route route : host.getRoutes()) {
+				result.add(host.getName() + " " + route);
+			}
 		}
+		return result.toArray(new String[result.size()]);
+	}
 
-		if (path.substring(1).startsWith(staticContentDir)) {
-			return StaticContentHandler.getInstance();
-		} else {
-			return null;
+	@Override
+	public String[] getVirtualHosts() {
+		List<VirtualHost> hosts = routes.getVirtualHosts();
+		String[] result = new String[hosts.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = hosts.get(i).getName();
 		}
+		return result;
 	}
 
-	void setStaticContentDir(String scd) {
-		staticContentDir = scd;
+	@Override
+	public boolean removeRoute(String host, String verb, String path) {
+		return removeRoute(host == null || host.isEmpty() ? RouteTable.DEFAULT_HOST : host,
+				verb == null || verb.isEmpty() || "*".equals(verb) ? null : HttpVerb.valueOf(verb.toUpperCase()),
+				path);
 	}
 
 	/**
@@ -180,5 +424,16 @@ public class HttpHandlerFactory implements HandlerFactory {
 	 * public Configuration getConfiguration() { return configuration; }
 	 */
 
+	private static class FilterMapping {
+
+		private final String prefix;
+
+		private final HttpFilter filter;
+
+		public FilterMapping(String prefix, HttpFilter filter) {
+			this.prefix = prefix;
+			this.filter = filter;
+		}
+	}
 
 }
@@ -0,0 +1,19 @@
+package io.github.ilmich.tempesta.web.http;
+
+public interface HttpHandlerFactoryMXBean {
+
+	long getVersion();
+
+	String[] getRoutes();
+
+	String[] getVirtualHosts();
+
+	/**
+	 * Remove a route. An empty host or "*" means the default host, an empty verb
+	 * or "*" the route serving any verb.
+	 */
+	boolean removeRoute(String host, String verb, String path);
+
+	void reload();
+
+}
@@ -3,16 +3,35 @@ package io.github.ilmich.tempesta.web.http;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import io.github.ilmich.tempesta.io.Protocol;
+import io.github.ilmich.tempesta.io.ResponseListener;
 import io.github.ilmich.tempesta.util.Log;
+import io.github.ilmich.tempesta.web.cache.ResponseCache;
+import io.github.ilmich.tempesta.web.handler.CannedRequestHandler;
 import io.github.ilmich.tempesta.web.handler.HandlerFactory;
+import io.github.ilmich.tempesta.web.handler.HttpContinueRequestHandler;
+import io.github.ilmich.tempesta.web.http.protocol.HttpStatus;
+import io.github.ilmich.tempesta.web.http.protocol.HttpVerb;
 
 public class HttpProtocol extends Protocol {
 
 	private static final String TAG = "HttpProtocol";
+
+	static final String SERVER = "Tempesta/0.5.0";
+
+	/**
+	 * Response sent to requests shed before parsing
+	 */
+	private static final ByteBuffer OVERLOAD_RESPONSE = ByteBuffer
+			.wrap((HttpStatus.SERVER_ERROR_SERVICE_UNAVAILABLE.line() + "Server: " + SERVER + "\r\nRetry-After: "
+					+ HttpServerDescriptor.RETRY_AFTER + "\r\nConnection: close\r\nContent-Length: 0\r\n\r\n")
+							.getBytes(Charset.forName("ASCII")))
+			.asReadOnlyBuffer();
 	/**
 	 * a queue of half-baked (pending/unfinished) HTTP post request
 	 */
@@ -49,18 +68,137 @@ public class HttpProtocol extends Protocol {
 		return null;
 	}
 
+	public boolean hasPartialRequest(SocketChannel client) {
+		return partials.containsKey(client);
+	}
+
+	public ByteBuffer getOverloadResponse() {
+		return OVERLOAD_RESPONSE.duplicate();
+	}
+
+	public boolean isBlocking(final Request request) {
+		return resolveHandler((HttpRequest) request).isBlocking();
+	}
+
+	public ExecutorService getExecutor(final Request request) {
+		resolveHandler((HttpRequest) request);
+		return factory.getExecutor(request);
+	}
+
+	@Override
+	public Response getCachedResponse(final Request request) {
+		HttpRequest req = (HttpRequest) request;
+		HttpRequestHandler rh = resolveHandler(req);
+		// responses sent before dispatch would skip the filters, e.g. an authentication
+		if (factory.getFilterChain(request).size() > 0) {
+			return null;
+		}
+		if (rh instanceof CannedRequestHandler) {
+			return ((CannedRequestHandler) rh).getResponse().newResponse(request.isKeepAlive(),
+					request.getMethod() != HttpVerb.HEAD);
+		}
+		ResponseCache cache = factory.getResponseCache(request);
+		if (cache == null || request.expectContinue()) {
+			return null;
+		}
+		String key = cache.getKey(req);
+		req.setCacheKey(key);
+		ResponseCache.Entry entry = key != null ? cache.get(key) : null;
+		if (entry == null) {
+			return null;
+		}
+		if (entry.isStale()) {
+			revalidate(req, cache, key);
+		}
+		return entry.newResponse(request.isKeepAlive());
+	}
+
+	/**
+	 * Process again in the background the given request, answered with a stale
+	 * response, to refresh it
+	 */
+	private void revalidate(final HttpRequest request, ResponseCache cache, String key) {
+		cache.revalidate(key, new Runnable() {
+
+			@Override
+			public void run() {
+				request.setCacheFill(true);
+				processRequest(request).release();
+			}
+		}, factory.getExecutor(request));
+	}
+
+	@Override
+	public boolean awaitResponse(final Request request, ResponseListener listener) {
+		HttpRequest req = (HttpRequest) request;
+		if (req.getCacheKey() == null) {
+			return false;
+		}
+		if (factory.getResponseCache(request).join(req.getCacheKey(), req, listener)) {
+			return true;
+		}
+		req.setCacheFill(true);
+		return false;
+	}
+
 	public Response processRequest(final Request request) {
 		Log.debug(TAG, request.toString());
+		HttpRequest req = (HttpRequest) request;
+		ResponseCache cache = req.isCacheFill() ? factory.getResponseCache(request) : null;
+		boolean filled = false;
+		try {
+			HttpResponse response = new HttpResponse(request.isKeepAlive());
+			response.setAcceptEncoding(request.getHeader("Accept-Encoding"));
+			if (cache == null && (request.getMethod() == HttpVerb.GET || request.getMethod() == HttpVerb.HEAD)) {
+				// a response filling the cache must be complete, to be shared
+				response.setConditions(request.getHeader("If-None-Match"), request.getHeader("If-Modified-Since"));
+			}
+			resolveHandler(req);
+			req.resetFilters();
+			dispatcher.dispatch(factory.getFilterChain(request), req, response);
+			response.setHeader("Server", SERVER);
+			response.prepare();
+			if (cache != null) {
+				cache.complete(req.getCacheKey(), response);
+				filled = true;
+			}
+			return response;
+		} finally {
+			if (cache != null && !filled) {
+				cache.abandon(req.getCacheKey());
+			}
+		}
+	}
+
+	public Response rejectRequest(final Request request, int retryAfter) {
+		HttpRequest req = (HttpRequest) request;
+		if (req.isCacheFill()) { // let the requests waiting for this one be processed
+			req.setCacheFill(false);
+			factory.getResponseCache(request).abandon(req.getCacheKey());
+		}
 		HttpResponse response = new HttpResponse(request.isKeepAlive());
-		// TODO: add pre http pipelina handlers
-		HttpRequestHandler rh = (HttpRequestHandler) factory.getHandler(request);
-		dispatcher.dispatch(rh, (HttpRequest) request, response);
-		// TODO: add post http pipelina handlers
-		response.setHeader("Server", "Tempesta/0.5.0");
+		response.setStatus(HttpStatus.SERVER_ERROR_SERVICE_UNAVAILABLE);
+		response.setHeader("Retry-After", String.valueOf(retryAfter));
+		response.setHeader("Server", SERVER);
+		response.write("Server too busy, retry later");
 		response.prepare();
 		return response;
 	}
 
+	/**
+	 * Resolve the handler for the given request only once, the result is cached
+	 * in the request itself
+	 */
+	private HttpRequestHandler resolveHandler(final HttpRequest request) {
+		HttpRequestHandler rh = request.getHandler();
+		// answered with "100 Continue", the request is resolved again with its body
+		if (rh == null || (rh == HttpContinueRequestHandler.getInstance() && !request.expectContinue())) {
+			rh = (HttpRequestHandler) factory.getHandler(request);
+			request.setHandler(rh);
+		}
+		return rh;
+	}
+
 	public HandlerFactory getFactory() {
 		return factory;
 	}
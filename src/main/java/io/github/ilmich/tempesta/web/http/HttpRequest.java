@@ -33,6 +33,7 @@ import java.util.regex.Pattern;
 import io.github.ilmich.tempesta.io.buffer.DynamicByteBuffer;
 import io.github.ilmich.tempesta.util.Strings;
 import io.github.ilmich.tempesta.web.http.protocol.HttpVerb;
+import io.github.ilmich.tempesta.web.http.router.Route;
 
 /**
  *
@@ -58,6 +59,14 @@ public class HttpRequest implements Request {
 	private DynamicByteBuffer bodyBuffer;
 	private Charset mainCharset = Charset.forName("ASCII");
 	private Map<String, Object> ctx = new HashMap<String, Object>();
+	private HttpRequestHandler handler;
+	private Route route;
+	private String[] pathParameterNames;
+	private String[] pathParameterValues;
+	private FilterChain filterChain;
+	private int filterIndex = 0;
+	private String cacheKey;
+	private boolean cacheFill;
 
 	/** Regex to parse HttpRequest Request Line */
 	public static final Pattern REQUEST_LINE_PATTERN = Pattern.compile(" ");
@@ -426,4 +435,106 @@ public class HttpRequest implements Request {
 	public Map<String, Object> getRequestContext() {
 		return ctx;
 	}
+
+	/**
+	 * Returns the handler already resolved for this request, if any
+	 */
+	protected HttpRequestHandler getHandler() {
+		return handler;
+	}
+
+	protected void setHandler(HttpRequestHandler handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * Returns the route matched by this request, if any
+	 */
+	protected Route getRoute() {
+		return route;
+	}
+
+	protected void setRoute(Route route) {
+		this.route = route;
+	}
+
+	protected void setPathParameters(String[] names, String[] values) {
+		this.pathParameterNames = names;
+		this.pathParameterValues = values;
+	}
+
+	@Override
+	public String getPathParameter(String name) {
+		if (pathParameterNames != null) {
+			for (int i = 0; i < pathParameterNames.length; i++) {
+				if (pathParameterNames[i].equals(name)) {
+					return pathParameterValues[i];
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Map<String, String> getPathParameters() {
+		if (pathParameterNames == null) {
+			return Collections.emptyMap();
+		}
+		Map<String, String> result = new HashMap<String, String>();
+		for (int i = 0; i < pathParameterNames.length; i++) {
+			result.put(pathParameterNames[i], pathParameterValues[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the filter chain of this request, <code>null</code> until it is
+	 * resolved
+	 */
+	FilterChain getFilterChain() {
+		return filterChain;
+	}
+
+	void setFilterChain(FilterChain filterChain) {
+		this.filterChain = filterChain;
+	}
+
+	/**
+	 * Returns the position of the next filter to invoke, see {@link FilterChain}
+	 */
+	int nextFilter() {
+		return filterIndex++;
+	}
+
+	/**
+	 * Walk the filters again from the first one, e.g. when a request answered
+	 * with "100 Continue" is processed again with its body
+	 */
+	void resetFilters() {
+		filterIndex = 0;
+	}
+
+	/**
+	 * Returns the key of the response of this request in the cache of its
+	 * route, if any
+	 */
+	String getCacheKey() {
+		return cacheKey;
+	}
+
+	void setCacheKey(String cacheKey) {
+		this.cacheKey = cacheKey;
+	}
+
+	/**
+	 * Returns true if the response of this request must be stored in the cache
+	 * of its route, and handed to the requests waiting for it
+	 */
+	boolean isCacheFill() {
+		return cacheFill;
+	}
+
+	void setCacheFill(boolean cacheFill) {
+		this.cacheFill = cacheFill;
+	}
 }
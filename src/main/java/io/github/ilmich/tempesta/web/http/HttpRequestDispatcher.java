@@ -33,6 +33,19 @@ public class HttpRequestDispatcher {
 
 	private static final String TAG = "HttpRequestDispatcher";
 
+	/**
+	 * Run the given filter chain, and finally the handler of the request.
+	 * Exceptions thrown by the filters are turned into error responses, as for
+	 * the handler.
+	 */
+	public void dispatch(FilterChain chain, HttpRequest request, HttpResponse response) {
+		try {
+			chain.proceed(request, response);
+		} catch (Exception ex) {
+			onException(ex, request, response);
+		}
+	}
+
 	public void dispatch(HttpRequestHandler rh, HttpRequest request, HttpResponse response) {
 		if (rh != null) {
 			HttpVerb method = request.getMethod();
@@ -66,19 +79,24 @@ public class HttpRequestDispatcher {
 					response.reset();
 					response.setStatus(HttpStatus.CLIENT_ERROR_METHOD_NOT_ALLOWED);
 				}
-			} catch (HttpException he) {
-				response.reset();
-				response.setStatus(he.getStatus());
-				Log.error(TAG, ExceptionUtils.getStackTrace(he));
-				Log.error(TAG, request.toString());
-				response.write(ExceptionUtils.getStackTrace(he));
 			} catch (Exception ex) {
-				response.reset();
-				response.setStatus(HttpStatus.SERVER_ERROR_INTERNAL_SERVER_ERROR);
-				Log.error(TAG, ExceptionUtils.getStackTrace(ex));
-				Log.error(TAG, request.toString());
-				response.write(ExceptionUtils.getStackTrace(ex));
+				onException(ex, request, response);
 			}
 		}
 	}
+
+	/**
+	 * Answer with the canned page of the error status, the stack trace is only
+	 * logged
+	 */
+	private void onException(Exception ex, HttpRequest request, HttpResponse response) {
+		response.reset();
+		HttpStatus status = HttpStatus.SERVER_ERROR_INTERNAL_SERVER_ERROR;
+		if (ex instanceof HttpException) {
+			status = ((HttpException) ex).getStatus();
+		}
+		Log.error(TAG, ExceptionUtils.getStackTrace(ex));
+		Log.error(TAG, request.toString());
+		CannedResponse.forStatus(status).apply(response, request.getMethod() != HttpVerb.HEAD);
+	}
 }
@@ -22,12 +22,19 @@ package io.github.ilmich.tempesta.web.http;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import io.github.ilmich.tempesta.io.BodySegment;
+import io.github.ilmich.tempesta.io.FileRegion;
+import io.github.ilmich.tempesta.io.ReadAheadFileRegion;
 import io.github.ilmich.tempesta.io.buffer.DynamicByteBuffer;
 import io.github.ilmich.tempesta.util.Closeables;
 import io.github.ilmich.tempesta.util.CookieUtil;
@@ -46,12 +53,29 @@ public class HttpResponse implements Response {
 	private final Map<String, String> headers = new HashMap<String, String>();
 	private final Map<String, String> cookies = new HashMap<String, String>();
 	private boolean headersCreated = false;
+	private int headLength;
 	private DynamicByteBuffer responseData = DynamicByteBuffer.allocate(HttpServerDescriptor.WRITE_BUFFER_SIZE);
-	private FileChannel file;
+	private List<BodySegment> segments = Collections.emptyList();
+	private long segmentsLength = 0;
+	private ByteBuffer content;
+	private byte[] renderedHeaders;
 	private Charset mainCharset = Charset.forName("ASCII");
 
 	private boolean createETag;
 
+	/**
+	 * The Accept-Encoding header of the request, <code>null</code> if the body
+	 * must not be compressed
+	 */
+	private String acceptEncoding;
+
+	/**
+	 * The conditional headers of the request, <code>null</code> if absent or if
+	 * the response must not be turned into a "304 Not Modified"
+	 */
+	private String ifNoneMatch;
+	private String ifModifiedSince;
+
 	@Override
 	public DynamicByteBuffer getResponseData() {
 		return responseData;
@@ -86,11 +110,74 @@ public class HttpResponse implements Response {
 		createETag = create;
 	}
 
+	/**
+	 * Compress the body on {@link #prepare()} with a content coding accepted by
+	 * the request, see {@link HttpServerDescriptor#RESPONSE_COMPRESSION}
+	 * 
+	 * @param acceptEncoding the Accept-Encoding header of the request
+	 */
+	public void setAcceptEncoding(String acceptEncoding) {
+		this.acceptEncoding = acceptEncoding;
+	}
+
+	/**
+	 * Answer "304 Not Modified" on {@link #prepare()} if the validators of a
+	 * successful response, its "Etag" and "Last-Modified" headers, match the
+	 * given conditions of a GET or HEAD request
+	 * 
+	 * @param ifNoneMatch     the If-None-Match header of the request
+	 * @param ifModifiedSince the If-Modified-Since header of the request
+	 */
+	public void setConditions(String ifNoneMatch, String ifModifiedSince) {
+		this.ifNoneMatch = ifNoneMatch;
+		this.ifModifiedSince = ifModifiedSince;
+	}
+
+	/**
+	 * Set the validators of the response and check them against the conditions
+	 * of the request, before generating the body, e.g.
+	 * 
+	 * <pre>
+	 * if (response.checkNotModified(item.getVersion(), item.getUpdated())) {
+	 * 	return;
+	 * }
+	 * </pre>
+	 * 
+	 * @param etag         the entity tag, quoted if needed, <code>null</code> if
+	 *                     none
+	 * @param lastModified the modification time in milliseconds, negative if
+	 *                     none
+	 * @return <code>true</code> if the client is up to date, the status is then
+	 *         "304 Not Modified" and the body must not be written
+	 */
+	public boolean checkNotModified(String etag, long lastModified) {
+		if (etag != null) {
+			etag = HttpUtil.quoteEtag(etag);
+			setHeader("Etag", etag);
+		}
+		if (lastModified >= 0) {
+			setHeader("Last-Modified", DateUtil.parseToRFC1123(lastModified));
+		}
+		if (HttpUtil.isNotModified(ifNoneMatch, ifModifiedSince, etag, lastModified)) {
+			setStatus(HttpStatus.REDIRECTION_NOT_MODIFIED);
+			return true;
+		}
+		return false;
+	}
+
 	public Response setHeader(String header, String value) {
 		headers.put(header, value);
 		return this;
 	}
 
+	public String getHeader(String header) {
+		return headers.get(header);
+	}
+
+	public boolean hasCookies() {
+		return !cookies.isEmpty();
+	}
+
 	public void setCookie(String name, String value) {
 		setCookie(name, value, -1, null, null, false, false);
 	}
@@ -172,22 +259,188 @@ public class HttpResponse implements Response {
 		return setHeader("Content-Type", contentType);
 	}
 
+	/**
+	 * Set header lines already encoded, e.g. "Content-Type: text/html\r\n",
+	 * sent after the other headers. Meant for responses served many times with
+	 * the same headers, which can be encoded once.
+	 */
+	public Response setRenderedHeaders(byte[] renderedHeaders) {
+		this.renderedHeaders = renderedHeaders;
+		return this;
+	}
+
+	@Override
+	public Response setContent(ByteBuffer content) {
+		responseData.clear();
+		this.content = content;
+		setHeader("Content-Length", String.valueOf(content.remaining()));
+		return this;
+	}
+
+	@Override
+	public ByteBuffer getContent() {
+		return content;
+	}
+
 	public void prepare() {
-		setEtagAndContentLength();
 		if (!headersCreated) {
-			String initial = createInitalLineAndHeaders();
-			responseData.prepend(initial);
+			compress();
+			setEtag();
+			if (isNotModified()) {
+				setNotModified();
+			}
+		}
+		setContentLength();
+		if (!headersCreated) {
+			byte[] head = renderHead();
+			responseData.prepend(head);
+			headLength = head.length;
 			headersCreated = true;
 		}
 		responseData.flip();
 	}
 
-	private void setEtagAndContentLength() {
-		if (responseData.position() > 0) {
-			if (createETag) {
-				setHeader("Etag", HttpUtil.getEtag(responseData.array()));
+	/**
+	 * Returns the status line and headers, ending with the blank line
+	 */
+	private byte[] renderHead() {
+		byte[] initial = createInitalLineAndHeaders().getBytes(mainCharset);
+		if (renderedHeaders != null) {
+			// insert the rendered headers before the blank line ending the headers
+			byte[] head = new byte[initial.length + renderedHeaders.length];
+			System.arraycopy(initial, 0, head, 0, initial.length - 2);
+			System.arraycopy(renderedHeaders, 0, head, initial.length - 2, renderedHeaders.length);
+			head[head.length - 2] = '\r';
+			head[head.length - 1] = '\n';
+			initial = head;
+		}
+		return initial;
+	}
+
+	/**
+	 * Returns the status line and headers of this prepared response, with the
+	 * "Connection" header telling the given keep-alive, e.g. to send the
+	 * response again to other clients
+	 */
+	public byte[] getHead(boolean keepAlive) {
+		if (!headersCreated) {
+			throw new IllegalStateException("Response not prepared");
+		}
+		String connection = headers.get("Connection");
+		setKeepAlive(keepAlive);
+		byte[] head = renderHead();
+		headers.put("Connection", connection);
+		return head;
+	}
+
+	/**
+	 * Returns a copy of the body of this prepared response
+	 * 
+	 * @throws IllegalStateException if the response is not prepared or its body
+	 *                               has segments
+	 */
+	public byte[] getBody() {
+		if (!headersCreated || !segments.isEmpty()) {
+			throw new IllegalStateException("Response not prepared or not in memory");
+		}
+		int dataLength = responseData.limit() - headLength;
+		int contentLength = content != null ? content.remaining() : 0;
+		byte[] body = new byte[dataLength + contentLength];
+		System.arraycopy(responseData.array(), headLength, body, 0, dataLength);
+		if (content != null) {
+			content.duplicate().get(body, dataLength, contentLength);
+		}
+		return body;
+	}
+
+	/**
+	 * Compress the body written by the handler if large enough, of a
+	 * compressible type and not already encoded
+	 */
+	private void compress() {
+		int length = responseData.position();
+		if (!HttpServerDescriptor.RESPONSE_COMPRESSION || content != null || !segments.isEmpty()
+				|| length < HttpServerDescriptor.COMPRESSION_MIN_SIZE || headers.containsKey("Content-Encoding")
+				|| !HttpUtil.isCompressible(headers.get("Content-Type"))) {
+			return;
+		}
+		addVary("Accept-Encoding");
+		if (acceptEncoding == null) {
+			return;
+		}
+		String encoding = null;
+		if (HttpUtil.acceptsEncoding(acceptEncoding, ResponseCompressor.GZIP)) {
+			encoding = ResponseCompressor.GZIP;
+		} else if (HttpUtil.acceptsEncoding(acceptEncoding, ResponseCompressor.DEFLATE)) {
+			encoding = ResponseCompressor.DEFLATE;
+		} else {
+			return;
+		}
+		ResponseCompressor compressor = ResponseCompressor.acquire(encoding);
+		try {
+			DynamicByteBuffer compressed = DynamicByteBuffer.allocate(length / 2 + 64);
+			compressor.compress(responseData.array(), 0, length, compressed, false);
+			compressor.finish(compressed);
+			if (compressed.position() < length) {
+				responseData = compressed;
+				setHeader("Content-Encoding", encoding);
 			}
-			setHeader("Content-Length", String.valueOf(responseData.position()));
+		} finally {
+			compressor.release();
+		}
+	}
+
+	private void addVary(String header) {
+		String vary = headers.get("Vary");
+		if (vary == null) {
+			setHeader("Vary", header);
+		} else if (!vary.contains(header)) {
+			setHeader("Vary", vary + ", " + header);
+		}
+	}
+
+	private void setEtag() {
+		if (!createETag || !segments.isEmpty() || headers.containsKey("Etag")) {
+			return;
+		}
+		if (content != null) {
+			setHeader("Etag", HttpUtil.getEtag(content));
+		} else if (responseData.position() > 0) {
+			setHeader("Etag", HttpUtil.getEtag(responseData.array(), 0, responseData.position()));
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if this successful response may be replaced by
+	 * "304 Not Modified", see {@link #setConditions(String, String)}
+	 */
+	private boolean isNotModified() {
+		if (status != HttpStatus.SUCCESS_OK || (ifNoneMatch == null && ifModifiedSince == null)) {
+			return false;
+		}
+		String header = headers.get("Last-Modified");
+		long lastModified = header != null ? DateUtil.parseToMilliseconds(header) : 0;
+		// zero when absent or not a date
+		return HttpUtil.isNotModified(ifNoneMatch, ifModifiedSince, headers.get("Etag"),
+				lastModified > 0 ? lastModified : -1);
+	}
+
+	/**
+	 * Drop the body, keeping the validators and the other headers a "304 Not
+	 * Modified" is expected to carry
+	 */
+	private void setNotModified() {
+		status = HttpStatus.REDIRECTION_NOT_MODIFIED;
+		responseData.clear();
+		content = null;
+		release();
+		headers.remove("Content-Length");
+		headers.remove("Content-Type");
+	}
+
+	private void setContentLength() {
+		if (content == null && (responseData.position() > 0 || !segments.isEmpty())) {
+			setHeader("Content-Length", String.valueOf(responseData.position() + segmentsLength));
 		}
 	}
 
@@ -207,17 +460,15 @@ public class HttpResponse implements Response {
 		return sb.toString();
 	}
 
-	/**
-	 * Experimental support.
-	 */
 	@Override
 	public long write(File file) {
-		// setHeader("Etag", HttpUtil.getEtag(file));
-		setHeader("Content-Length", String.valueOf(file.length()));
 		FileInputStream in = null;
 		try {
 			in = new FileInputStream(file);
-			this.file = in.getChannel();
+			FileChannel channel = in.getChannel();
+			long length = channel.size();
+			write(channel, 0, length);
+			return length;
 		} catch (IOException e) {
 			Log.error(TAG, "Error writing (static file " + file.getAbsolutePath() + ") to response: " + e.getMessage());
 			// If an exception occurs here we should ensure that file is closed
@@ -228,8 +479,35 @@ public class HttpResponse implements Response {
 	}
 
 	@Override
-	public FileChannel getFile() {
-		return file;
+	public Response write(FileChannel channel, long position, long count) {
+		if (HttpServerDescriptor.FILE_IO_THREADS > 0) {
+			return write(new ReadAheadFileRegion(channel, position, count));
+		}
+		return write(new FileRegion(channel, position, count));
+	}
+
+	@Override
+	public Response write(BodySegment segment) {
+		if (segments.isEmpty()) {
+			segments = new ArrayList<BodySegment>(2);
+		}
+		segments.add(segment);
+		segmentsLength += segment.length();
+		return this;
+	}
+
+	@Override
+	public List<BodySegment> getBodySegments() {
+		return segments;
+	}
+
+	@Override
+	public void release() {
+		for (BodySegment segment : segments) {
+			segment.release();
+		}
+		segments = Collections.emptyList();
+		segmentsLength = 0;
 	}
 
 	/*
@@ -241,7 +519,11 @@ public class HttpResponse implements Response {
 		this.headers.clear();
 		this.headersCreated = false;
 		this.cookies.clear();
-		this.file = null;
+		release();
+		this.content = null;
+		this.renderedHeaders = null;
+		this.ifNoneMatch = null;
+		this.ifModifiedSince = null;
 	}
 
 	@Override
@@ -1,16 +1,37 @@
 package io.github.ilmich.tempesta.web.http;
 
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
 import io.github.ilmich.tempesta.io.PlainIOHandler;
 import io.github.ilmich.tempesta.io.connectors.ServerConnector;
+import io.github.ilmich.tempesta.io.executor.BoundedExecutor;
+import io.github.ilmich.tempesta.io.executor.ConcurrencyLimiter;
+import io.github.ilmich.tempesta.io.executor.VirtualThreadExecutor;
+import io.github.ilmich.tempesta.web.cache.ResponseCache;
+import io.github.ilmich.tempesta.web.handler.CannedRequestHandler;
+import io.github.ilmich.tempesta.web.handler.GzipSidecarBuilder;
 import io.github.ilmich.tempesta.web.handler.HandlerFactory;
+import io.github.ilmich.tempesta.web.handler.HandlerLifecycle;
+import io.github.ilmich.tempesta.web.http.protocol.HttpStatus;
+import io.github.ilmich.tempesta.web.http.protocol.HttpVerb;
+import io.github.ilmich.tempesta.web.http.router.VirtualHost;
 
 public class HttpServerBuilder {
 
 	private HttpServer instance = new HttpServer();
 	private HttpProtocol protocol = new HttpProtocol();
+	private List<PlainIOHandler> handlers = new ArrayList<PlainIOHandler>();
+	private ExecutorService executor = null;
+	private ConcurrencyLimiter limiter = null;
+	private List<String> precompressed = new ArrayList<String>();
 
 	public HttpServerBuilder bindPlain(int port) {
 		PlainIOHandler hndl = new PlainIOHandler(protocol);
+		handlers.add(hndl);
 		ServerConnector conn = new ServerConnector();
 		conn.bind(port);
 		conn.setIoHandler(hndl);
@@ -29,12 +50,236 @@ public class HttpServerBuilder {
 		return this;
 	}
 
+	/**
+	 * Add a route whose handler is explicitly marked as blocking or not.
+	 * Non-blocking handlers run directly on the connector thread, saving the
+	 * hand-off to the worker executor.
+	 */
+	public HttpServerBuilder addRoute(String route, HttpRequestHandler handler, boolean blocking) {
+		handler.setBlocking(blocking);
+		return addRoute(route, handler);
+	}
+
+	/**
+	 * Add a route whose handler instances are shared according to the given
+	 * lifecycle, e.g. {@link HandlerLifecycle#POOLED} for a handler with mutable
+	 * state which is not thread safe.
+	 */
+	public HttpServerBuilder addRoute(String route, HttpRequestHandler handler, HandlerLifecycle lifecycle) {
+		handler.setLifecycle(lifecycle);
+		return addRoute(route, handler);
+	}
+
+	/**
+	 * Add a route whose handler runs on a dedicated executor (bulkhead), so that
+	 * a slow route cannot starve the others.
+	 */
+	public HttpServerBuilder addRoute(String route, HttpRequestHandler handler, ExecutorService executor) {
+		if (this.protocol.getFactory() == null) {
+			this.protocol.setFactory(new HttpHandlerFactory());
+		}
+		this.protocol.getFactory().addRoute(route, handler, executor);
+		return this;
+	}
+
+	/**
+	 * Add a route whose handler runs on a dedicated {@link BoundedExecutor} with
+	 * the given number of threads and queue capacity. When saturated requests
+	 * to this route are answered with 503, while other routes keep being
+	 * served.
+	 */
+	public HttpServerBuilder addRoute(String route, HttpRequestHandler handler, int maxConcurrency,
+			int queueCapacity) {
+		return addRoute(route, handler, new BoundedExecutor("route " + route, maxConcurrency, queueCapacity,
+				HttpServerDescriptor.QUEUE_TIMEOUT, HttpServerDescriptor.RETRY_AFTER));
+	}
+
+	/**
+	 * Add a route served only for the given verb, e.g.
+	 * <code>addRoute(HttpVerb.GET, "/users/{id}", handler)</code>. The other
+	 * verbs on the same path are answered with 405, unless served by other
+	 * routes.
+	 */
+	public HttpServerBuilder addRoute(HttpVerb verb, String route, HttpRequestHandler handler) {
+		if (this.protocol.getFactory() == null) {
+			this.protocol.setFactory(new HttpHandlerFactory());
+		}
+		this.protocol.getFactory().addRoute(verb, route, handler);
+		return this;
+	}
+
+	public HttpServerBuilder addRoute(HttpVerb verb, String route, HttpRequestHandler handler,
+			ExecutorService executor) {
+		if (this.protocol.getFactory() == null) {
+			this.protocol.setFactory(new HttpHandlerFactory());
+		}
+		this.protocol.getFactory().addRoute(verb, route, handler, executor);
+		return this;
+	}
+
+	/**
+	 * Add a route whose GET and HEAD responses are cached for the given time
+	 * to live (ms), then served stale for up to <code>staleWhileRevalidate</code>
+	 * ms while refreshed in the background. Requests differing by the given
+	 * request headers get their own response. Concurrent misses run the handler
+	 * once. Routes with filters are not cached, as cache hits would be answered
+	 * without running them.
+	 * 
+	 * @see ResponseCache
+	 */
+	public HttpServerBuilder addCachedRoute(String route, HttpRequestHandler handler, long ttl,
+			long staleWhileRevalidate, String... varyHeaders) {
+		return addCachedRoute(route, handler,
+				new ResponseCache("route " + route, ttl, staleWhileRevalidate, varyHeaders));
+	}
+
+	/**
+	 * Add a route whose GET and HEAD responses are cached in the given cache,
+	 * e.g. one keeping them off-heap in a
+	 * {@link io.github.ilmich.tempesta.web.cache.SlabStore}
+	 */
+	public HttpServerBuilder addCachedRoute(String route, HttpRequestHandler handler, ResponseCache cache) {
+		if (this.protocol.getFactory() == null) {
+			this.protocol.setFactory(new HttpHandlerFactory());
+		}
+		this.protocol.getFactory().addRoute(null, route, handler, null, cache);
+		return this;
+	}
+
+	/**
+	 * Add a route always answered with the same response, e.g. a health check.
+	 * The response is encoded once, and sent without running a handler when the
+	 * route has no filters.
+	 */
+	public HttpServerBuilder addFixedRoute(String route, HttpStatus status, String contentType, String body) {
+		return addFixedRoute(route, new CannedResponse(status, contentType, body.getBytes(Charset.forName("UTF-8"))));
+	}
+
+	public HttpServerBuilder addFixedRoute(String route, CannedResponse response) {
+		return addRoute(route, new CannedRequestHandler(response));
+	}
+
+	/**
+	 * Add the routes of the handlers annotated with
+	 * {@link io.github.ilmich.tempesta.web.annotation.Path} in the given package
+	 * and its subpackages. Requires the default {@link HttpHandlerFactory}.
+	 */
+	public HttpServerBuilder addAnnotatedRoutes(String handlerPackage) {
+		if (this.protocol.getFactory() == null) {
+			this.protocol.setFactory(new HttpHandlerFactory());
+		}
+		((HttpHandlerFactory) this.protocol.getFactory()).addRouteIndexes(handlerPackage);
+		return this;
+	}
+
+	/**
+	 * Add a filter run around the handling of all requests. Filters run in the
+	 * order they are added. Requires the default {@link HttpHandlerFactory}.
+	 */
+	public HttpServerBuilder addFilter(HttpFilter filter) {
+		return addFilter(null, filter);
+	}
+
+	/**
+	 * Add a filter run around the handling of the requests matching a route
+	 * whose path pattern starts with the given prefix, e.g. "/api/".
+	 */
+	public HttpServerBuilder addFilter(String pathPrefix, HttpFilter filter) {
+		if (this.protocol.getFactory() == null) {
+			this.protocol.setFactory(new HttpHandlerFactory());
+		}
+		((HttpHandlerFactory) this.protocol.getFactory()).addFilter(pathPrefix, filter);
+		return this;
+	}
+
+	/**
+	 * Add a virtual host, serving its own routes and static content to
+	 * requests whose <code>Host</code> header matches its name. Requests to
+	 * other hosts are served by the routes added directly to this builder.
+	 */
+	public HttpServerBuilder addVirtualHost(VirtualHost host) {
+		if (this.protocol.getFactory() == null) {
+			this.protocol.setFactory(new HttpHandlerFactory());
+		}
+		this.protocol.getFactory().addVirtualHost(host);
+		return this;
+	}
+
 	public HttpServerBuilder setHandlerFactory(HandlerFactory factory) {
 		this.protocol.setFactory(factory);
 		return this;
 	}
 
+	/**
+	 * Set the executor running blocking handlers. By default each connector gets
+	 * its own {@link BoundedExecutor} sized after {@link HttpServerDescriptor}.
+	 */
+	public HttpServerBuilder setExecutor(ExecutorService executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Run blocking handlers on virtual threads, one per request, up to
+	 * {@link HttpServerDescriptor#MAX_VIRTUAL_THREADS} concurrent requests.
+	 * 
+	 * @throws UnsupportedOperationException if the JVM does not support virtual
+	 *                                       threads (Java 21 or newer required)
+	 */
+	public HttpServerBuilder useVirtualThreads() {
+		return setExecutor(new VirtualThreadExecutor("virtual"));
+	}
+
+	/**
+	 * Limit the number of blocking requests in flight with the given adaptive
+	 * limiter, shared by all connectors. Requests over the limit are shed with a
+	 * 503 response before being parsed.
+	 */
+	public HttpServerBuilder setConcurrencyLimiter(ConcurrencyLimiter limiter) {
+		this.limiter = limiter;
+		return this;
+	}
+
+	/**
+	 * Shortcut for {@link #setConcurrencyLimiter(ConcurrencyLimiter)} with the
+	 * default limiter settings.
+	 */
+	public HttpServerBuilder useAdaptiveConcurrencyLimit() {
+		return setConcurrencyLimiter(new ConcurrencyLimiter("requests"));
+	}
+
+	/**
+	 * Build the missing gzip variants of the static files under the given
+	 * directory in a background thread, once the server is built
+	 * 
+	 * @see GzipSidecarBuilder
+	 */
+	public HttpServerBuilder precompressStaticContent(String directory) {
+		precompressed.add(directory);
+		return this;
+	}
+
 	public HttpServer build() {
+		for (PlainIOHandler hndl : handlers) {
+			if (executor != null) {
+				hndl.setExecutor(executor);
+			}
+			hndl.setConcurrencyLimiter(limiter);
+		}
+		if (!precompressed.isEmpty()) {
+			final List<String> directories = new ArrayList<String>(precompressed);
+			Thread t = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					for (String directory : directories) {
+						new GzipSidecarBuilder(new File(directory)).run();
+					}
+				}
+			}, "tempesta-precompress");
+			t.setDaemon(true);
+			t.start();
+		}
 		return this.instance;
 	}
 
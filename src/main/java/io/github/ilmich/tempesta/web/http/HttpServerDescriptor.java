@@ -48,10 +48,176 @@ public class HttpServerDescriptor {
 
 	public static int MIN_THREADS_PROCESSOR = 1;
 
-	public static int MAX_THREADS_PROCESSOR = 1024;
+	/**
+	 * Number of worker threads running blocking handlers. Requests exceeding
+	 * this limit are queued rather than spawning new threads.
+	 */
+	public static int MAX_THREADS_PROCESSOR = 256;
 
 	public static int THREAD_PROCESSOR_IDLE_TIME = 60;
 
+	/**
+	 * Maximum number of requests waiting for a worker thread. When the queue is
+	 * full new requests are answered with 503 Service Unavailable.
+	 */
+	public static int MAX_QUEUED_REQUESTS = 1024;
+
+	/**
+	 * Maximum time (ms) a request may wait for a worker thread before being
+	 * answered with 503 Service Unavailable, 0 means no limit
+	 */
+	public static long QUEUE_TIMEOUT = 10 * 1000; // 10s
+
+	/**
+	 * Maximum number of requests processed at the same time when handlers run on
+	 * virtual threads (Java 21+)
+	 */
+	public static int MAX_VIRTUAL_THREADS = 16 * 1024;
+
+	/**
+	 * Seconds suggested to clients in the Retry-After header of 503 responses
+	 */
+	public static int RETRY_AFTER = 1;
+
+	/**
+	 * Maximum number of idle instances kept for each route whose handler is
+	 * pooled, see {@link io.github.ilmich.tempesta.web.handler.HandlerLifecycle}
+	 */
+	public static int HANDLER_POOL_SIZE = 64;
+
+	/**
+	 * Maximum total size (bytes) of the static files cached in memory, 0
+	 * disables the cache
+	 */
+	public static long STATIC_CACHE_SIZE = 64 * 1024 * 1024; // 64MB
+
+	/**
+	 * Maximum size (bytes) of a static file cached in memory, larger files are
+	 * streamed from disk
+	 */
+	public static long STATIC_CACHE_MAX_FILE_SIZE = 1024 * 1024; // 1MB
+
+	/**
+	 * Time (ms) between two background checks of the cached static file
+	 * attributes for changes
+	 */
+	public static long STATIC_CACHE_CHECK_INTERVAL = 1000; // 1s
+
+	/**
+	 * Maximum number of static paths whose attributes are cached, 0 disables
+	 * the cache
+	 */
+	public static int STATIC_METADATA_CACHE_SIZE = 10000;
+
+	/**
+	 * Time (ms) a static path not found on disk is remembered as missing
+	 */
+	public static long STATIC_NEGATIVE_TTL = 5000; // 5s
+
+	/**
+	 * Maximum total size (bytes) of the static files served from memory
+	 * mappings, 0 disables the mmap mode
+	 */
+	public static long STATIC_MMAP_SIZE = 0;
+
+	/**
+	 * Minimum size (bytes) of a static file served from a memory mapping,
+	 * smaller files are better served by the in-memory cache
+	 */
+	public static long STATIC_MMAP_MIN_FILE_SIZE = 1024 * 1024; // 1MB
+
+	/**
+	 * Number of requests after which a static file is mapped
+	 */
+	public static int STATIC_MMAP_MIN_HITS = 2;
+
+	/**
+	 * A file in the <code>mime.types</code> format extending the built-in MIME
+	 * types of static files, <code>null</code> for none
+	 */
+	public static String MIME_TYPES_FILE = null;
+
+	/**
+	 * Serve the precompressed variants of static files ("a.js.br", "a.js.gz")
+	 * to the clients accepting them
+	 */
+	public static boolean STATIC_PRECOMPRESSED = true;
+
+	/**
+	 * Minimum size (bytes) of a static file for which a gzip variant is built,
+	 * see {@link io.github.ilmich.tempesta.web.handler.GzipSidecarBuilder}
+	 */
+	public static long STATIC_GZIP_MIN_SIZE = 1024; // 1KB
+
+	/**
+	 * Content types worth compressing, matched as prefixes
+	 */
+	public static String[] COMPRESSIBLE_TYPES = { "text/", "application/javascript", "application/json",
+			"application/xml", "application/xhtml+xml", "application/wasm", "image/svg+xml" };
+
+	/**
+	 * Compress the bodies written by handlers with gzip or deflate when the
+	 * client accepts it, see {@link ResponseCompressor}
+	 */
+	public static boolean RESPONSE_COMPRESSION = true;
+
+	/**
+	 * Minimum size (bytes) of a body to compress
+	 */
+	public static int COMPRESSION_MIN_SIZE = 1024; // 1KB
+
+	/**
+	 * Compression level, from 1 (fastest) to 9 (smallest)
+	 */
+	public static int COMPRESSION_LEVEL = 6;
+
+	/**
+	 * Maximum number of idle deflaters pooled for each content coding
+	 */
+	public static int COMPRESSION_POOL_SIZE = 64;
+
+	/**
+	 * Maximum number of responses held by the cache of a route, see
+	 * {@link io.github.ilmich.tempesta.web.cache.ResponseCache}
+	 */
+	public static int RESPONSE_CACHE_SIZE = 1000;
+
+	/**
+	 * Maximum size (bytes) of a cached response, headers included
+	 */
+	public static int RESPONSE_CACHE_MAX_ENTRY_SIZE = 256 * 1024;
+
+	/**
+	 * Number of threads refreshing stale cached responses of routes without a
+	 * dedicated executor
+	 */
+	public static int RESPONSE_CACHE_REVALIDATE_THREADS = 2;
+
+	/**
+	 * Maximum number of ranges served for a single "Range" header, requests
+	 * asking for more get the whole content
+	 */
+	public static int MAX_BYTE_RANGES = 16;
+
+	/**
+	 * Number of threads reading files sent in responses, so that a slow disk
+	 * does not block the event loop. Meant for files likely to miss the page
+	 * cache (slow or network storage): files read ahead are copied through
+	 * buffers instead of being sent with zero-copy transferTo. 0, the default,
+	 * sends files with transferTo from the event loop.
+	 */
+	public static int FILE_IO_THREADS = 0;
+
+	/**
+	 * Size (bytes) of the chunks files are read in by the file I/O threads
+	 */
+	public static int FILE_IO_BUFFER_SIZE = 64 * 1024; // 64KB
+
+	/**
+	 * Maximum number of chunks read in advance for each file being sent
+	 */
+	public static int FILE_IO_READ_AHEAD = 2;
+
 	public static final long MAX_BODY = 1024000;
 
 }
@@ -21,6 +21,8 @@ package io.github.ilmich.tempesta.web.http;
 
 import java.util.HashMap;
 
+import io.github.ilmich.tempesta.web.http.router.Route;
+
 public class MalFormedHttpRequest extends HttpRequest {
 
 	public static final MalFormedHttpRequest instance = new MalFormedHttpRequest();
@@ -34,4 +36,31 @@ public class MalFormedHttpRequest extends HttpRequest {
 		return true;
 	}
 
+	/* The instance is shared between connections, never cache a handler on it */
+	@Override
+	protected void setHandler(HttpRequestHandler handler) {
+	}
+
+	@Override
+	protected void setRoute(Route route) {
+	}
+
+	/* never walk filters on the shared instance, go straight to the handler */
+	@Override
+	int nextFilter() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	void setFilterChain(FilterChain filterChain) {
+	}
+
+	@Override
+	void resetFilters() {
+	}
+
+	@Override
+	protected void setPathParameters(String[] names, String[] values) {
+	}
+
 }
@@ -0,0 +1,184 @@
+package io.github.ilmich.tempesta.web.http;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.ilmich.tempesta.io.BodySegment;
+import io.github.ilmich.tempesta.io.buffer.DynamicByteBuffer;
+import io.github.ilmich.tempesta.web.http.protocol.HttpStatus;
+
+/**
+ * A response whose bytes (status line, headers and body) are already encoded,
+ * e.g. served from a cache. The bytes are shared, not copied: they must not be
+ * modified, and the response itself cannot be.
+ */
+public class RenderedResponse implements Response {
+
+	private final DynamicByteBuffer data;
+
+	private final ByteBuffer body;
+
+	private final boolean keepAlive;
+
+	/**
+	 * Run once the response is released, <code>null</code> if nothing is held
+	 */
+	private Runnable onRelease;
+
+	/**
+	 * @param bytes     the whole response
+	 * @param keepAlive whether the connection is kept open once sent, as told
+	 *                  by the "Connection" header in the bytes
+	 */
+	public RenderedResponse(byte[] bytes, boolean keepAlive) {
+		this(ByteBuffer.wrap(bytes), null, keepAlive, null);
+	}
+
+	/**
+	 * @param head      the status line and headers, written from its position
+	 *                  to its limit
+	 * @param body      the body, written after the head in the same gathering
+	 *                  write, <code>null</code> if none
+	 * @param keepAlive whether the connection is kept open once sent, as told
+	 *                  by the "Connection" header in the head
+	 * @param onRelease run once the response is sent or dropped, e.g. to unpin
+	 *                  the memory holding the buffers
+	 */
+	public RenderedResponse(ByteBuffer head, ByteBuffer body, boolean keepAlive, Runnable onRelease) {
+		this.data = DynamicByteBuffer.wrap(head);
+		this.body = body;
+		this.keepAlive = keepAlive;
+		this.onRelease = onRelease;
+	}
+
+	@Override
+	public DynamicByteBuffer getResponseData() {
+		return data;
+	}
+
+	@Override
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	@Override
+	public List<BodySegment> getBodySegments() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public ByteBuffer getContent() {
+		return body;
+	}
+
+	@Override
+	public void prepare() {
+		// already rendered
+	}
+
+	@Override
+	public synchronized void release() {
+		if (onRelease != null) {
+			onRelease.run();
+			onRelease = null;
+		}
+	}
+
+	@Override
+	public long flush() {
+		return 0;
+	}
+
+	@Override
+	public long finish() {
+		return 0;
+	}
+
+	@Override
+	public Response write(String data) {
+		throw immutable();
+	}
+
+	@Override
+	public Response write(byte[] data) {
+		throw immutable();
+	}
+
+	@Override
+	public long write(File file) {
+		throw immutable();
+	}
+
+	@Override
+	public Response write(FileChannel channel, long position, long count) {
+		throw immutable();
+	}
+
+	@Override
+	public Response write(BodySegment segment) {
+		throw immutable();
+	}
+
+	@Override
+	public Response setContent(ByteBuffer content) {
+		throw immutable();
+	}
+
+	@Override
+	public void reset() {
+		throw immutable();
+	}
+
+	@Override
+	public Response setStatus(HttpStatus status) {
+		throw immutable();
+	}
+
+	@Override
+	public Response setHeader(String header, String value) {
+		throw immutable();
+	}
+
+	@Override
+	public void setCookie(String name, String value) {
+		throw immutable();
+	}
+
+	@Override
+	public void setCookie(String name, String value, long expiration) {
+		throw immutable();
+	}
+
+	@Override
+	public void setCookie(String name, String value, String domain) {
+		throw immutable();
+	}
+
+	@Override
+	public void setCookie(String name, String value, String domain, String path) {
+		throw immutable();
+	}
+
+	@Override
+	public void setCookie(String name, String value, long expiration, String domain) {
+		throw immutable();
+	}
+
+	@Override
+	public void setCookie(String name, String value, long expiration, String domain, String path) {
+		throw immutable();
+	}
+
+	@Override
+	public void clearCookie(String name) {
+		throw immutable();
+	}
+
+	private static UnsupportedOperationException immutable() {
+		return new UnsupportedOperationException("Rendered responses cannot be modified");
+	}
+
+}
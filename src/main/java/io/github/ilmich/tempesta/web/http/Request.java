@@ -119,6 +119,20 @@ public interface Request {
 	 */
 	public Collection<String> getParameterValues(String name);
 
+	/**
+	 * Returns the value of a parameter captured from the path by the matched
+	 * route, e.g. "id" for the route "/users/{id}", or null if the route has no
+	 * such parameter.
+	 */
+	public String getPathParameter(String name);
+
+	/**
+	 * Returns all the parameters captured from the path by the matched route.
+	 * 
+	 * @return the path parameters, by name
+	 */
+	public Map<String, String> getPathParameters();
+
 	/**
 	 * The body of this request
 	 * 
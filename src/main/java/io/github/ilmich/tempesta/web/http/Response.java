@@ -20,8 +20,11 @@
 package io.github.ilmich.tempesta.web.http;
 
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.List;
 
+import io.github.ilmich.tempesta.io.BodySegment;
 import io.github.ilmich.tempesta.io.buffer.DynamicByteBuffer;
 import io.github.ilmich.tempesta.web.http.protocol.HttpStatus;
 
@@ -48,10 +51,39 @@ public interface Response {
 	Response write(byte[] data);
 
 	/**
-	 * Experimental support.
+	 * Append the whole file to the body.
+	 * 
+	 * @return the length of the file
 	 */
 	long write(File file);
 
+	/**
+	 * Append a region of a file to the body. The channel is closed when the
+	 * response is released.
+	 * 
+	 * @param channel  the file to send
+	 * @param position the offset of the first byte to send
+	 * @param count    the number of bytes to send
+	 * @return <code>this</code>, for chaining.
+	 */
+	Response write(FileChannel channel, long position, long count);
+
+	/**
+	 * Append a segment to the body. Segments are sent in order after the data
+	 * written with {@link #write(byte[])}, the "Content-Length" header counts
+	 * both.
+	 * 
+	 * @return <code>this</code>, for chaining.
+	 */
+	Response write(BodySegment segment);
+
+	/**
+	 * Set the body of the response, replacing anything written. The buffer is
+	 * written from its position to its limit, after the headers and without
+	 * being copied: it must not be modified until the response is sent.
+	 */
+	Response setContent(ByteBuffer content);
+
 	/**
 	 * Explicit flush.
 	 * 
@@ -76,7 +108,22 @@ public interface Response {
 
 	public DynamicByteBuffer getResponseData();
 
-	public FileChannel getFile();
+	/**
+	 * Returns the segments appended to the body, never <code>null</code>
+	 */
+	public List<BodySegment> getBodySegments();
+
+	/**
+	 * Release the resources held by the body (e.g. open files), called once the
+	 * response is sent or dropped
+	 */
+	public void release();
+
+	/**
+	 * Returns the body set with {@link #setContent(ByteBuffer)}, or
+	 * <code>null</code>
+	 */
+	public ByteBuffer getContent();
 
 	public boolean isKeepAlive();
 
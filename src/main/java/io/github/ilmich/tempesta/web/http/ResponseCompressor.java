@@ -0,0 +1,147 @@
+package io.github.ilmich.tempesta.web.http;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import io.github.ilmich.tempesta.io.buffer.DynamicByteBuffer;
+
+/**
+ * Compress a response body with the "gzip" or "deflate" content coding.
+ * <p>
+ * Deflaters hold native memory and are costly to create, so they are pooled
+ * (up to {@link HttpServerDescriptor#COMPRESSION_POOL_SIZE} idle instances
+ * for each coding) and reset between responses: always {@link #release()} a
+ * compressor once done. A body may be compressed in several pieces, e.g. one
+ * per chunk of a streamed response: a flushed piece can be decoded by the
+ * client without waiting for the next one.
+ */
+public class ResponseCompressor {
+
+	public static final String GZIP = "gzip";
+
+	public static final String DEFLATE = "deflate";
+
+	private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+	private static final ConcurrentLinkedQueue<Deflater> gzipDeflaters = new ConcurrentLinkedQueue<Deflater>();
+
+	private static final ConcurrentLinkedQueue<Deflater> deflateDeflaters = new ConcurrentLinkedQueue<Deflater>();
+
+	private static final AtomicInteger gzipPooled = new AtomicInteger();
+
+	private static final AtomicInteger deflatePooled = new AtomicInteger();
+
+	private final boolean gzip;
+
+	private final Deflater deflater;
+
+	private final CRC32 crc;
+
+	private final byte[] chunk = new byte[8192];
+
+	private boolean started = false;
+
+	private ResponseCompressor(boolean gzip, Deflater deflater) {
+		this.gzip = gzip;
+		this.deflater = deflater;
+		this.crc = gzip ? new CRC32() : null;
+	}
+
+	/**
+	 * Returns a compressor for the given coding, with a pooled deflater set to
+	 * {@link HttpServerDescriptor#COMPRESSION_LEVEL}
+	 * 
+	 * @param encoding {@link #GZIP} or {@link #DEFLATE}
+	 */
+	public static ResponseCompressor acquire(String encoding) {
+		boolean gzip = GZIP.equals(encoding);
+		Deflater deflater = (gzip ? gzipDeflaters : deflateDeflaters).poll();
+		if (deflater == null) {
+			// gzip has its own header and trailer around the raw deflate data
+			deflater = new Deflater(HttpServerDescriptor.COMPRESSION_LEVEL, gzip);
+		} else {
+			(gzip ? gzipPooled : deflatePooled).decrementAndGet();
+			deflater.setLevel(HttpServerDescriptor.COMPRESSION_LEVEL);
+		}
+		return new ResponseCompressor(gzip, deflater);
+	}
+
+	public String getEncoding() {
+		return gzip ? GZIP : DEFLATE;
+	}
+
+	/**
+	 * Compress the given bytes, appending the output to <code>out</code>
+	 * 
+	 * @param flush <code>true</code> to flush the compressed output so far, e.g.
+	 *              at a chunk boundary
+	 */
+	public void compress(byte[] data, int offset, int length, DynamicByteBuffer out, boolean flush) {
+		start(out);
+		if (gzip) {
+			crc.update(data, offset, length);
+		}
+		deflater.setInput(data, offset, length);
+		int count;
+		while ((count = deflater.deflate(chunk, 0, chunk.length, Deflater.NO_FLUSH)) > 0) {
+			out.put(chunk, 0, count);
+		}
+		if (flush) {
+			while ((count = deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH)) > 0) {
+				out.put(chunk, 0, count);
+			}
+		}
+	}
+
+	/**
+	 * Complete the compressed body, appending the remaining output to
+	 * <code>out</code>
+	 */
+	public void finish(DynamicByteBuffer out) {
+		start(out);
+		deflater.finish();
+		while (!deflater.finished()) {
+			int count = deflater.deflate(chunk, 0, chunk.length);
+			out.put(chunk, 0, count);
+		}
+		if (gzip) {
+			writeIntLE(out, (int) crc.getValue());
+			writeIntLE(out, deflater.getTotalIn());
+		}
+	}
+
+	/**
+	 * Give back the deflater to the pool, the compressor must not be used
+	 * anymore
+	 */
+	public void release() {
+		deflater.reset();
+		AtomicInteger pooled = gzip ? gzipPooled : deflatePooled;
+		if (pooled.incrementAndGet() <= HttpServerDescriptor.COMPRESSION_POOL_SIZE) {
+			(gzip ? gzipDeflaters : deflateDeflaters).offer(deflater);
+		} else {
+			pooled.decrementAndGet();
+			deflater.end();
+		}
+	}
+
+	private void start(DynamicByteBuffer out) {
+		if (!started) {
+			started = true;
+			if (gzip) {
+				out.put(GZIP_HEADER);
+			}
+		}
+	}
+
+	private void writeIntLE(DynamicByteBuffer out, int value) {
+		chunk[0] = (byte) value;
+		chunk[1] = (byte) (value >> 8);
+		chunk[2] = (byte) (value >> 16);
+		chunk[3] = (byte) (value >> 24);
+		out.put(chunk, 0, 4);
+	}
+
+}
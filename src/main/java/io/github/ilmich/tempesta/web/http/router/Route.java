@@ -0,0 +1,204 @@
+package io.github.ilmich.tempesta.web.http.router;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+
+import io.github.ilmich.tempesta.io.executor.VirtualThreads;
+import io.github.ilmich.tempesta.web.cache.ResponseCache;
+import io.github.ilmich.tempesta.web.handler.HandlerLifecycle;
+import io.github.ilmich.tempesta.web.handler.RequestHandlerFactory;
+import io.github.ilmich.tempesta.web.http.FilterChain;
+import io.github.ilmich.tempesta.web.http.HttpRequestHandler;
+import io.github.ilmich.tempesta.web.http.HttpServerDescriptor;
+import io.github.ilmich.tempesta.web.http.protocol.HttpVerb;
+
+/**
+ * A route: a path pattern, optionally restricted to one HTTP verb, mapped to
+ * the handler serving it.
+ * <p>
+ * Path patterns are made of segments separated by '/'. Besides static
+ * segments, a pattern can contain:
+ * <ul>
+ * <li><code>{name}</code> a named parameter matching one whole segment</li>
+ * <li><code>{name:regex}</code> a named parameter matching one segment that
+ * must also match the given regular expression</li>
+ * <li><code>(regex)</code> an unnamed parameter, the n-th one being named
+ * "n"</li>
+ * <li><code>*name</code> as last segment, a wildcard capturing the rest of
+ * the path</li>
+ * </ul>
+ * e.g. "/users/{id}/posts/{post}", "/persons/([0-9]+)", "/files/*path".
+ */
+public class Route {
+
+	private final HttpVerb verb;
+
+	private final String path;
+
+	private final HttpRequestHandler handler;
+
+	private final ExecutorService executor;
+
+	private final ResponseCache responseCache;
+
+	/**
+	 * Instances of the handler confined to a thread, for {@link HandlerLifecycle#THREAD}
+	 */
+	private final ThreadLocal<HttpRequestHandler> threadHandlers;
+
+	/**
+	 * Idle instances of the handler, for {@link HandlerLifecycle#POOLED} and
+	 * for {@link HandlerLifecycle#THREAD} on virtual threads
+	 */
+	private final BlockingQueue<HttpRequestHandler> pooledHandlers;
+
+	private String[] parameterNames = new String[0];
+
+	/**
+	 * The filters wrapping the handler, compiled before the route is published
+	 */
+	private final FilterChain filterChain;
+
+	/**
+	 * @param verb     the verb served by this route, <code>null</code> for any
+	 * @param path     the path pattern
+	 * @param handler  the handler serving the route
+	 * @param executor the dedicated executor of the route, <code>null</code> to
+	 *                 use the default one
+	 */
+	public Route(HttpVerb verb, String path, HttpRequestHandler handler, ExecutorService executor) {
+		this(verb, path, handler, executor, null);
+	}
+
+	/**
+	 * @param cache the cache of the responses of the route, <code>null</code>
+	 *              for none
+	 */
+	public Route(HttpVerb verb, String path, HttpRequestHandler handler, ExecutorService executor,
+			ResponseCache cache) {
+		this.verb = verb;
+		this.path = path;
+		this.handler = handler;
+		this.executor = executor;
+		this.responseCache = cache;
+		this.filterChain = FilterChain.EMPTY;
+
+		HandlerLifecycle lifecycle = handler == null ? HandlerLifecycle.SINGLETON : handler.getLifecycle();
+		if (lifecycle != HandlerLifecycle.SINGLETON && RequestHandlerFactory.cloneHandler(handler) == null) {
+			throw new IllegalArgumentException("Handler of route " + path + " cannot be cloned");
+		}
+		if (lifecycle == HandlerLifecycle.THREAD) {
+			threadHandlers = new ThreadLocal<HttpRequestHandler>() {
+				@Override
+				protected HttpRequestHandler initialValue() {
+					return RequestHandlerFactory.cloneHandler(Route.this.handler);
+				}
+			};
+		} else {
+			threadHandlers = null;
+		}
+		if (lifecycle == HandlerLifecycle.POOLED || lifecycle == HandlerLifecycle.THREAD) {
+			pooledHandlers = new ArrayBlockingQueue<HttpRequestHandler>(HttpServerDescriptor.HANDLER_POOL_SIZE);
+		} else {
+			pooledHandlers = null;
+		}
+	}
+
+	/**
+	 * Create a copy of the given route wrapped by the given filters. The copy
+	 * shares the handler instances of the route.
+	 */
+	public Route(Route route, FilterChain filterChain) {
+		this.verb = route.verb;
+		this.path = route.path;
+		this.handler = route.handler;
+		this.executor = route.executor;
+		this.responseCache = route.responseCache;
+		this.threadHandlers = route.threadHandlers;
+		this.pooledHandlers = route.pooledHandlers;
+		this.parameterNames = route.parameterNames;
+		this.filterChain = filterChain;
+	}
+
+	public HttpVerb getVerb() {
+		return verb;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public HttpRequestHandler getHandler() {
+		return handler;
+	}
+
+	/**
+	 * Returns true if each request gets an instance of the handler through
+	 * {@link #acquireHandler()}, rather than sharing the registered one
+	 */
+	public boolean isHandlerConfined() {
+		return threadHandlers != null || pooledHandlers != null;
+	}
+
+	/**
+	 * Returns an instance of the handler according to its lifecycle, to give
+	 * back with {@link #releaseHandler(HttpRequestHandler)} once the request is
+	 * handled
+	 */
+	public HttpRequestHandler acquireHandler() {
+		HttpRequestHandler instance = null;
+		if (isThreadConfined()) {
+			instance = threadHandlers.get();
+		} else if (pooledHandlers != null) {
+			instance = pooledHandlers.poll();
+			if (instance == null) {
+				instance = RequestHandlerFactory.cloneHandler(handler);
+			}
+		}
+		return instance != null ? instance : handler;
+	}
+
+	public void releaseHandler(HttpRequestHandler instance) {
+		if (pooledHandlers != null && instance != handler && !isThreadConfined()) {
+			pooledHandlers.offer(instance); // dropped when the pool is full
+		}
+	}
+
+	/**
+	 * Returns true if the current thread keeps its own instance of the handler.
+	 * Virtual threads are not reused: they get pooled instances instead.
+	 */
+	private boolean isThreadConfined() {
+		return threadHandlers != null && !VirtualThreads.isVirtual(Thread.currentThread());
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * Returns the names of the path parameters, in the order they are captured
+	 */
+	public String[] getParameterNames() {
+		return parameterNames;
+	}
+
+	void setParameterNames(String[] parameterNames) {
+		this.parameterNames = parameterNames;
+	}
+
+	public FilterChain getFilterChain() {
+		return filterChain;
+	}
+
+	@Override
+	public String toString() {
+		return (verb == null ? "*" : verb.toString()) + " " + path;
+	}
+
+}
@@ -0,0 +1,20 @@
+package io.github.ilmich.tempesta.web.http.router;
+
+/**
+ * The routes of the annotated handlers of a package, generated at build time
+ * by {@link io.github.ilmich.tempesta.web.annotation.RouteProcessor} and
+ * listed in <code>META-INF/services</code>.
+ */
+public interface RouteIndex {
+
+	/**
+	 * Returns the package of the indexed handlers
+	 */
+	String getPackage();
+
+	/**
+	 * Add the indexed routes to the given host
+	 */
+	void addRoutes(VirtualHost host);
+
+}
@@ -0,0 +1,19 @@
+package io.github.ilmich.tempesta.web.http.router;
+
+import java.util.Collection;
+
+/**
+ * A source of routes, queried each time the routes are reloaded at runtime.
+ * 
+ * @see io.github.ilmich.tempesta.web.http.HttpHandlerFactory#reload()
+ */
+public interface RouteProvider {
+
+	/**
+	 * Returns the hosts to serve, with their routes. A host named
+	 * {@link RouteTable#DEFAULT_HOST} replaces the default host, otherwise the
+	 * current default host is kept.
+	 */
+	Collection<VirtualHost> getVirtualHosts();
+
+}
@@ -0,0 +1,158 @@
+package io.github.ilmich.tempesta.web.http.router;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.ilmich.tempesta.util.HttpUtil;
+
+/**
+ * An immutable snapshot of the routes served: the default host and the
+ * virtual hosts.
+ * <p>
+ * A table is never modified once published, changes are made by building a
+ * new table (see the <code>with*</code> methods) and swapping it in, so that
+ * requests can be routed concurrently with changes without any locking. The
+ * hosts of a published table must not be modified either.
+ */
+public class RouteTable {
+
+	/**
+	 * The name of the default host
+	 */
+	public static final String DEFAULT_HOST = "*";
+
+	private final VirtualHost defaultHost;
+
+	/**
+	 * Virtual hosts by exact name
+	 */
+	private final Map<String, VirtualHost> hosts = new HashMap<String, VirtualHost>();
+
+	/**
+	 * Wildcard virtual hosts, most specific (longest) first
+	 */
+	private final VirtualHost[] wildcardHosts;
+
+	private final long version;
+
+	public RouteTable() {
+		this(new VirtualHost(DEFAULT_HOST), Collections.<VirtualHost>emptyList(), 0);
+	}
+
+	/**
+	 * @param defaultHost the host serving requests matching no virtual host
+	 * @param virtualHosts the virtual hosts, a later host replaces an earlier
+	 *                     one with the same name
+	 * @param version      the version of this table
+	 */
+	public RouteTable(VirtualHost defaultHost, Collection<VirtualHost> virtualHosts, long version) {
+		this.defaultHost = defaultHost;
+		this.version = version;
+		Map<String, VirtualHost> wildcards = new HashMap<String, VirtualHost>();
+		for (VirtualHost host : virtualHosts) {
+			if (host.isWildcard()) {
+				wildcards.put(host.getName(), host);
+			} else {
+				hosts.put(host.getName(), host);
+			}
+		}
+		List<VirtualHost> sorted = new ArrayList<VirtualHost>(wildcards.values());
+		Collections.sort(sorted, new Comparator<VirtualHost>() {
+			@Override
+			public int compare(VirtualHost a, VirtualHost b) {
+				return b.getName().length() - a.getName().length();
+			}
+		});
+		wildcardHosts = sorted.toArray(new VirtualHost[sorted.size()]);
+	}
+
+	/**
+	 * Returns the virtual host serving the given <code>Host</code> header value
+	 */
+	public VirtualHost match(String hostHeader) {
+		if (hostHeader == null || (hosts.isEmpty() && wildcardHosts.length == 0)) {
+			return defaultHost;
+		}
+		String name = HttpUtil.getHostName(hostHeader);
+		VirtualHost host = hosts.get(name);
+		if (host != null) {
+			return host;
+		}
+		for (VirtualHost wildcard : wildcardHosts) {
+			if (wildcard.matchesSubdomain(name)) {
+				return wildcard;
+			}
+		}
+		return defaultHost;
+	}
+
+	/**
+	 * Returns the host with the given name, {@link #DEFAULT_HOST} for the
+	 * default one, or <code>null</code> if there is no such host
+	 */
+	public VirtualHost getHost(String name) {
+		name = name.toLowerCase();
+		if (DEFAULT_HOST.equals(name)) {
+			return defaultHost;
+		}
+		VirtualHost host = hosts.get(name);
+		if (host == null) {
+			for (VirtualHost wildcard : wildcardHosts) {
+				if (wildcard.getName().equals(name)) {
+					return wildcard;
+				}
+			}
+		}
+		return host;
+	}
+
+	public VirtualHost getDefaultHost() {
+		return defaultHost;
+	}
+
+	/**
+	 * Returns the virtual hosts, the default one excluded
+	 */
+	public List<VirtualHost> getVirtualHosts() {
+		List<VirtualHost> result = new ArrayList<VirtualHost>(hosts.values());
+		Collections.addAll(result, wildcardHosts);
+		return result;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns a new table where the given host replaces the one with the same
+	 * name, or is added
+	 */
+	public RouteTable withHost(VirtualHost host) {
+		if (DEFAULT_HOST.equals(host.getName())) {
+			return new RouteTable(host, getVirtualHosts(), version + 1);
+		}
+		List<VirtualHost> virtualHosts = getVirtualHosts();
+		virtualHosts.add(host);
+		return new RouteTable(defaultHost, virtualHosts, version + 1);
+	}
+
+	/**
+	 * Returns a new table without the virtual host with the given name
+	 */
+	public RouteTable withoutHost(String name) {
+		List<VirtualHost> virtualHosts = getVirtualHosts();
+		for (int i = 0; i < virtualHosts.size(); i++) {
+			if (virtualHosts.get(i).getName().equals(name.toLowerCase())) {
+				virtualHosts.remove(i);
+				break;
+			}
+		}
+		return new RouteTable(defaultHost, virtualHosts, version + 1);
+	}
+
+}
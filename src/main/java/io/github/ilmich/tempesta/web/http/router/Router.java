@@ -0,0 +1,374 @@
+package io.github.ilmich.tempesta.web.http.router;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import io.github.ilmich.tempesta.web.handler.MethodNotAllowedRequestHandler;
+import io.github.ilmich.tempesta.web.http.protocol.HttpVerb;
+
+/**
+ * A compressed radix tree mapping request paths to {@link Route}s.
+ * <p>
+ * Static text is stored in compressed edges; parameters and wildcards are
+ * separate children of the node they follow. When matching, static edges are
+ * preferred over parameters, and parameters over wildcards. Matching walks the
+ * path in place: the only allocations are the captured parameter values.
+ * <p>
+ * Routes are added at configuration time, the tree must not be modified while
+ * it is being used to match requests.
+ */
+public class Router {
+
+	private final Node root = new Node("");
+
+	private final List<Route> routes = new ArrayList<Route>();
+
+	private int maxParameters = 0;
+
+	/**
+	 * Add the given route. A route with the same verb and path replaces the
+	 * previous one.
+	 * 
+	 * @throws IllegalArgumentException      if the path is not valid
+	 * @throws java.util.regex.PatternSyntaxException if a parameter regular
+	 *                                       expression is not valid
+	 */
+	public Router add(Route route) {
+		String path = route.getPath();
+		if (path.isEmpty() || path.charAt(0) != '/') {
+			throw new IllegalArgumentException("Route path must start with '/': " + path);
+		}
+		List<String> names = new ArrayList<String>();
+		Node node = root;
+		StringBuilder text = new StringBuilder();
+		int pos = 0;
+		while (pos < path.length()) {
+			int end = path.indexOf('/', pos + 1);
+			if (end < 0) {
+				end = path.length();
+			}
+			// path.charAt(pos) is always '/'
+			String segment = path.substring(pos + 1, end);
+			if (isParameter(segment) || isWildcard(segment)) {
+				text.append('/');
+				node = insertStatic(node, text.toString());
+				text.setLength(0);
+				if (isWildcard(segment)) {
+					if (end != path.length()) {
+						throw new IllegalArgumentException("Wildcard must be the last segment: " + path);
+					}
+					names.add(segment.length() > 1 ? segment.substring(1) : "*");
+					if (node.wildcard == null) {
+						node.wildcard = new Node("");
+					}
+					node = node.wildcard;
+				} else {
+					String name;
+					String regex;
+					if (segment.charAt(0) == '(') {
+						name = String.valueOf(names.size() + 1);
+						regex = segment;
+					} else {
+						int colon = segment.indexOf(':');
+						name = segment.substring(1, colon < 0 ? segment.length() - 1 : colon);
+						regex = colon < 0 ? null : segment.substring(colon + 1, segment.length() - 1);
+					}
+					names.add(name);
+					node = node.parameter(regex);
+				}
+			} else {
+				text.append(path, pos, end);
+			}
+			pos = end;
+		}
+		if (text.length() > 0) {
+			node = insertStatic(node, text.toString());
+		}
+
+		route.setParameterNames(names.toArray(new String[names.size()]));
+		Route previous = node.setRoute(route);
+		if (previous != null) {
+			routes.remove(previous);
+		}
+		routes.add(route);
+		maxParameters = Math.max(maxParameters, names.size());
+		return this;
+	}
+
+	/**
+	 * Find the route serving the given verb and path.
+	 * 
+	 * @param verb   the requested verb
+	 * @param path   the requested path
+	 * @param values receives the captured parameter values, must be at least
+	 *               {@link #getMaxParameters()} long
+	 * @return the matching route, a route answering "405 Method Not Allowed"
+	 *         with the verbs served if the path matches but the verb is not
+	 *         served, <code>null</code> if nothing matches
+	 */
+	public Route find(HttpVerb verb, String path, String[] values) {
+		Node node = match(root, path, 0, values, 0);
+		if (node == null) {
+			return null;
+		}
+		Route route = node.getRoute(verb);
+		return route != null ? route : node.notAllowed;
+	}
+
+	/**
+	 * Returns the maximum number of parameters captured by a route
+	 */
+	public int getMaxParameters() {
+		return maxParameters;
+	}
+
+	public List<Route> getRoutes() {
+		return Collections.unmodifiableList(routes);
+	}
+
+	private Node match(Node node, String path, int pos, String[] values, int depth) {
+		if (pos == path.length()) {
+			if (node.hasRoutes()) {
+				return node;
+			}
+			if (node.wildcard != null && node.wildcard.hasRoutes()) {
+				values[depth] = "";
+				return node.wildcard;
+			}
+			return null;
+		}
+
+		Node child = node.getChild(path.charAt(pos));
+		if (child != null && path.startsWith(child.prefix, pos)) {
+			Node found = match(child, path, pos + child.prefix.length(), values, depth);
+			if (found != null) {
+				return found;
+			}
+		}
+
+		if (node.parameters != null) {
+			int end = path.indexOf('/', pos);
+			if (end < 0) {
+				end = path.length();
+			}
+			if (end > pos) {
+				for (Node parameter : node.parameters) {
+					if (parameter.constraint != null
+							&& !parameter.constraint.matcher(path).region(pos, end).matches()) {
+						continue;
+					}
+					Node found = match(parameter, path, end, values, depth + 1);
+					if (found != null) {
+						values[depth] = path.substring(pos, end);
+						return found;
+					}
+				}
+			}
+		}
+
+		if (node.wildcard != null && node.wildcard.hasRoutes()) {
+			values[depth] = path.substring(pos);
+			return node.wildcard;
+		}
+		return null;
+	}
+
+	/**
+	 * Insert the given static text below the given node, splitting existing
+	 * edges when needed, and return the node where the text ends
+	 */
+	private Node insertStatic(Node node, String text) {
+		while (!text.isEmpty()) {
+			Node child = node.getChild(text.charAt(0));
+			if (child == null) {
+				child = new Node(text);
+				node.addChild(child);
+				return child;
+			}
+			int common = commonPrefix(child.prefix, text);
+			if (common < child.prefix.length()) {
+				child.split(common);
+			}
+			node = child;
+			text = text.substring(common);
+		}
+		return node;
+	}
+
+	private static int commonPrefix(String a, String b) {
+		int max = Math.min(a.length(), b.length());
+		int i = 0;
+		while (i < max && a.charAt(i) == b.charAt(i)) {
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean isParameter(String segment) {
+		return segment.length() > 1 && ((segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}')
+				|| (segment.charAt(0) == '(' && segment.charAt(segment.length() - 1) == ')'));
+	}
+
+	private static boolean isWildcard(String segment) {
+		return segment.length() > 0 && segment.charAt(0) == '*';
+	}
+
+	private static class Node {
+
+		private String prefix;
+
+		private char[] indices = new char[0];
+
+		private Node[] children = new Node[0];
+
+		private Node[] parameters = null;
+
+		private Node wildcard = null;
+
+		/**
+		 * The pattern a parameter must match, for parameter nodes only
+		 */
+		private Pattern constraint = null;
+
+		private String regex = null;
+
+		private Route[] routes = null;
+
+		private Route anyRoute = null;
+
+		/**
+		 * Answers the verbs not served, built when a route is set
+		 */
+		private Route notAllowed = null;
+
+		public Node(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public Node getChild(char c) {
+			for (int i = 0; i < indices.length; i++) {
+				if (indices[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		public void addChild(Node child) {
+			int len = indices.length;
+			char[] newIndices = new char[len + 1];
+			Node[] newChildren = new Node[len + 1];
+			System.arraycopy(indices, 0, newIndices, 0, len);
+			System.arraycopy(children, 0, newChildren, 0, len);
+			newIndices[len] = child.prefix.charAt(0);
+			newChildren[len] = child;
+			indices = newIndices;
+			children = newChildren;
+		}
+
+		/**
+		 * Split this node at the given prefix position, moving everything below to
+		 * a new child node
+		 */
+		public void split(int at) {
+			Node tail = new Node(prefix.substring(at));
+			tail.indices = indices;
+			tail.children = children;
+			tail.parameters = parameters;
+			tail.wildcard = wildcard;
+			tail.routes = routes;
+			tail.anyRoute = anyRoute;
+			tail.notAllowed = notAllowed;
+
+			prefix = prefix.substring(0, at);
+			indices = new char[] { tail.prefix.charAt(0) };
+			children = new Node[] { tail };
+			parameters = null;
+			wildcard = null;
+			routes = null;
+			anyRoute = null;
+			notAllowed = null;
+		}
+
+		/**
+		 * Returns the parameter child with the given constraint, creating it if
+		 * needed. Constrained parameters are tried before the unconstrained one.
+		 */
+		public Node parameter(String regex) {
+			if (parameters == null) {
+				parameters = new Node[0];
+			}
+			for (Node parameter : parameters) {
+				if (regex == null ? parameter.regex == null : regex.equals(parameter.regex)) {
+					return parameter;
+				}
+			}
+			Node parameter = new Node("");
+			parameter.regex = regex;
+			parameter.constraint = regex == null ? null : Pattern.compile(regex);
+			Node[] newParameters = new Node[parameters.length + 1];
+			if (regex == null) {
+				System.arraycopy(parameters, 0, newParameters, 0, parameters.length);
+				newParameters[parameters.length] = parameter;
+			} else {
+				System.arraycopy(parameters, 0, newParameters, 1, parameters.length);
+				newParameters[0] = parameter;
+			}
+			parameters = newParameters;
+			return parameter;
+		}
+
+		public boolean hasRoutes() {
+			return routes != null || anyRoute != null;
+		}
+
+		public Route getRoute(HttpVerb verb) {
+			if (routes != null) {
+				Route route = routes[verb.ordinal()];
+				if (route != null) {
+					return route;
+				}
+			}
+			return anyRoute;
+		}
+
+		/**
+		 * Set the given route, returning the one previously registered for the
+		 * same verb
+		 */
+		public Route setRoute(Route route) {
+			Route previous;
+			if (route.getVerb() == null) {
+				previous = anyRoute;
+				anyRoute = route;
+			} else {
+				if (routes == null) {
+					routes = new Route[HttpVerb.values().length];
+				}
+				previous = routes[route.getVerb().ordinal()];
+				routes[route.getVerb().ordinal()] = route;
+				notAllowed = new Route(null, "", new MethodNotAllowedRequestHandler(getAllow()), null);
+			}
+			return previous;
+		}
+
+		/**
+		 * Returns the verbs served, as listed by the "Allow" header
+		 */
+		private String getAllow() {
+			StringBuilder allow = new StringBuilder();
+			for (Route route : routes) {
+				if (route != null) {
+					if (allow.length() > 0) {
+						allow.append(", ");
+					}
+					allow.append(route.getVerb());
+				}
+			}
+			return allow.toString();
+		}
+	}
+
+}
@@ -0,0 +1,196 @@
+package io.github.ilmich.tempesta.web.http.router;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import io.github.ilmich.tempesta.web.cache.ResponseCache;
+import io.github.ilmich.tempesta.web.handler.StaticContentHandler;
+import io.github.ilmich.tempesta.web.http.HttpRequestHandler;
+import io.github.ilmich.tempesta.web.http.protocol.HttpVerb;
+
+/**
+ * A virtual host: the routes and the static content served for requests whose
+ * <code>Host</code> header matches the host name.
+ * <p>
+ * The name is either an exact host name, e.g. "api.example.com", or a wildcard
+ * matching any subdomain, e.g. "*.example.com" (which does not match
+ * "example.com" itself). Names are case insensitive and never include the
+ * port.
+ */
+public class VirtualHost {
+
+	private final String name;
+
+	private Router router = new Router();
+
+	/**
+	 * The path prefix of static content, relative to the document root
+	 */
+	private String staticContentDir = null;
+
+	private HttpRequestHandler staticContentHandler = StaticContentHandler.getInstance();
+
+	public VirtualHost(String name) {
+		this.name = name.toLowerCase();
+	}
+
+	/**
+	 * Create a copy of the given host, with the same routes and static content
+	 * but its own router and route instances
+	 */
+	public VirtualHost(VirtualHost other) {
+		this(other, copy(other.getRoutes()));
+	}
+
+	/**
+	 * Create a copy of the given host serving the given routes in place of its
+	 * own, e.g. the routes with their filters compiled. The routes must not be
+	 * served by another host yet.
+	 */
+	public VirtualHost(VirtualHost other, List<Route> routes) {
+		this.name = other.name;
+		this.staticContentDir = other.staticContentDir;
+		this.staticContentHandler = other.staticContentHandler;
+		for (Route route : routes) {
+			router.add(route);
+		}
+	}
+
+	private static List<Route> copy(List<Route> routes) {
+		List<Route> copies = new ArrayList<Route>(routes.size());
+		for (Route route : routes) {
+			copies.add(new Route(route, route.getFilterChain()));
+		}
+		return copies;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isWildcard() {
+		return name.startsWith("*.");
+	}
+
+	/**
+	 * Returns true if the given (lower case, port-less) host name is served by
+	 * this wildcard virtual host
+	 */
+	public boolean matchesSubdomain(String host) {
+		// "*.example.com" matches "a.example.com", compare from the dot
+		return host.length() > name.length() - 1 && host.regionMatches(host.length() - name.length() + 1, name, 1,
+				name.length() - 1);
+	}
+
+	public VirtualHost addRoute(String path, HttpRequestHandler handler) {
+		return addRoute(null, path, handler, null);
+	}
+
+	public VirtualHost addRoute(String path, HttpRequestHandler handler, ExecutorService executor) {
+		return addRoute(null, path, handler, executor);
+	}
+
+	public VirtualHost addRoute(HttpVerb verb, String path, HttpRequestHandler handler) {
+		return addRoute(verb, path, handler, null);
+	}
+
+	public VirtualHost addRoute(HttpVerb verb, String path, HttpRequestHandler handler, ExecutorService executor) {
+		return addRoute(verb, path, handler, executor, null);
+	}
+
+	/**
+	 * Add a route whose GET and HEAD responses are cached in the given cache,
+	 * see {@link ResponseCache}
+	 */
+	public VirtualHost addRoute(HttpVerb verb, String path, HttpRequestHandler handler, ExecutorService executor,
+			ResponseCache cache) {
+		router.add(new Route(verb, path, handler, executor, cache));
+		return this;
+	}
+
+	/**
+	 * Remove the route with the given verb (<code>null</code> for the route
+	 * serving any verb) and path pattern.
+	 * 
+	 * @return true if the route was found
+	 */
+	public boolean removeRoute(HttpVerb verb, String path) {
+		Router rebuilt = new Router();
+		boolean found = false;
+		for (Route route : router.getRoutes()) {
+			if (route.getVerb() == verb && route.getPath().equals(path)) {
+				found = true;
+			} else {
+				rebuilt.add(route);
+			}
+		}
+		if (found) {
+			router = rebuilt;
+		}
+		return found;
+	}
+
+	public Router getRouter() {
+		return router;
+	}
+
+	public List<Route> getRoutes() {
+		return router.getRoutes();
+	}
+
+	/**
+	 * Serve the files under the given directory, e.g. "static" serves
+	 * "/static/style.css" from "static/style.css" in the document root
+	 */
+	public VirtualHost setStaticContentDir(String staticContentDir) {
+		this.staticContentDir = staticContentDir;
+		return this;
+	}
+
+	public String getStaticContentDir() {
+		return staticContentDir;
+	}
+
+	/**
+	 * Set the directory static content is resolved against, by default the
+	 * working directory
+	 */
+	public VirtualHost setDocumentRoot(String documentRoot) {
+		this.staticContentHandler = new StaticContentHandler(new File(documentRoot));
+		return this;
+	}
+
+	/**
+	 * Set the handler serving the static content, e.g. an
+	 * {@link io.github.ilmich.tempesta.web.handler.ArchiveContentHandler}
+	 * instead of the files under the document root
+	 */
+	public VirtualHost setStaticContentHandler(HttpRequestHandler staticContentHandler) {
+		this.staticContentHandler = staticContentHandler;
+		return this;
+	}
+
+	/**
+	 * Returns the handler serving the static content at the given path, or
+	 * <code>null</code> if the path is not under the static directory
+	 */
+	public HttpRequestHandler getStaticContentHandler(String path) {
+		if (staticContentDir == null || path.length() <= staticContentDir.length()) {
+			return null; // quick reject (no static dir or simple contradiction)
+		}
+
+		if (path.startsWith(staticContentDir, 1)) {
+			return staticContentHandler;
+		} else {
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
@@ -0,0 +1,31 @@
+package io.github.ilmich.tempesta.io.executor;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads, Java 21 implementation.
+ */
+public class VirtualThreads {
+
+	/**
+	 * @return <code>true</code> if the running JVM supports virtual threads
+	 */
+	public static boolean isSupported() {
+		return true;
+	}
+
+	/**
+	 * Create a factory of virtual threads named after the given prefix.
+	 */
+	public static ThreadFactory newFactory(String prefix) {
+		return Thread.ofVirtual().name(prefix, 1).factory();
+	}
+
+	/**
+	 * @return <code>true</code> if the given thread is a virtual thread
+	 */
+	public static boolean isVirtual(Thread thread) {
+		return thread.isVirtual();
+	}
+
+}